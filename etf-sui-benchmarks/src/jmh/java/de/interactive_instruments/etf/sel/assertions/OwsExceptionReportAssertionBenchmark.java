@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.assertions;
+
+import java.util.concurrent.TimeUnit;
+
+import com.eviware.soapui.config.TestAssertionConfig;
+import com.eviware.soapui.model.iface.MessageExchange;
+import com.eviware.soapui.model.testsuite.AssertionException;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.interactive_instruments.etf.sel.benchmarks.MessageExchanges;
+import de.interactive_instruments.etf.sel.benchmarks.Responses;
+
+/**
+ * Checking WFS and Atom responses of increasing size and an exception
+ * report for OWS exceptions
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class OwsExceptionReportAssertionBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int features;
+
+	private OwsExceptionReportAssertionImpl assertion;
+	private MessageExchange featureCollection;
+	private MessageExchange atomFeed;
+	private MessageExchange exceptionReport;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final TestAssertionConfig config = TestAssertionConfig.Factory.newInstance();
+		config.setType(OwsExceptionReportAssertionImpl.ID);
+		assertion = new OwsExceptionReportAssertionImpl(config, MessageExchanges.assertable());
+		featureCollection = MessageExchanges.recorded(Responses.wfsFeatureCollection(features, null));
+		atomFeed = MessageExchanges.recorded(Responses.atomFeed(features));
+		exceptionReport = MessageExchanges.recorded(Responses.owsExceptionReport());
+	}
+
+	@Benchmark
+	public String featureCollection() throws AssertionException {
+		return assertion.internalAssertResponse(featureCollection, null);
+	}
+
+	@Benchmark
+	public String atomFeed() throws AssertionException {
+		return assertion.internalAssertResponse(atomFeed, null);
+	}
+
+	@Benchmark
+	public Object exceptionReport() {
+		try {
+			return assertion.internalAssertResponse(exceptionReport, null);
+		} catch (final AssertionException e) {
+			return e;
+		}
+	}
+}
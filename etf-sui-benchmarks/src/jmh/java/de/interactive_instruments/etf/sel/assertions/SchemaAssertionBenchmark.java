@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.assertions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import com.eviware.soapui.config.TestAssertionConfig;
+import com.eviware.soapui.model.iface.MessageExchange;
+import com.eviware.soapui.model.testsuite.AssertionException;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.interactive_instruments.etf.sel.benchmarks.MessageExchanges;
+import de.interactive_instruments.etf.sel.benchmarks.Responses;
+
+/**
+ * Schema validation of WFS responses of increasing size. The schema is
+ * compiled in the first invocation and then taken from the schema cache.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SchemaAssertionBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int features;
+
+	private File schemaFile;
+	private SchemaAssertionImpl assertion;
+	private MessageExchange validResponse;
+	private MessageExchange invalidResponse;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		schemaFile = File.createTempFile("etf-sel-bm", ".xsd");
+		Files.write(schemaFile.toPath(), Responses.featureSchema().getBytes(StandardCharsets.UTF_8));
+		final TestAssertionConfig config = TestAssertionConfig.Factory.newInstance();
+		config.setType(SchemaAssertionImpl.ID);
+		assertion = new SchemaAssertionImpl(config, MessageExchanges.assertable());
+		assertion.setPathToXSD(schemaFile.toURI().toString());
+		final String response = Responses.wfsFeatureCollection(features, null);
+		validResponse = MessageExchanges.recorded(response);
+		// the height of the last feature is not a double
+		final int lastHeight = response.lastIndexOf(".5</bm:height>");
+		invalidResponse = MessageExchanges.recorded(
+				response.substring(0, lastHeight) + "m" + response.substring(lastHeight + 2));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(schemaFile.toPath());
+	}
+
+	@Benchmark
+	public String validate() throws AssertionException {
+		return assertion.internalAssertResponse(validResponse, null);
+	}
+
+	@Benchmark
+	public Object validateInvalid() {
+		try {
+			return assertion.internalAssertResponse(invalidResponse, null);
+		} catch (final AssertionException e) {
+			return e;
+		}
+	}
+}
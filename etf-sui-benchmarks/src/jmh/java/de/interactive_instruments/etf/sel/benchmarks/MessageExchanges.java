@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+
+import com.eviware.soapui.model.iface.MessageExchange;
+import com.eviware.soapui.model.testsuite.Assertable;
+
+/**
+ * Recorded message exchanges without a SoapUI request
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class MessageExchanges {
+
+	private MessageExchanges() {}
+
+	/**
+	 * @param response response content
+	 * @return a message exchange which has a request and the response
+	 */
+	public static MessageExchange recorded(final String response) {
+		final byte[] rawResponse = response.getBytes(StandardCharsets.UTF_8);
+		return (MessageExchange) Proxy.newProxyInstance(MessageExchanges.class.getClassLoader(),
+				new Class<?>[]{MessageExchange.class}, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getResponseContent":
+					case "getResponseContentAsXml":
+						return response;
+					case "getRawResponseData":
+						return rawResponse;
+					case "hasResponse":
+					case "hasRequest":
+						return true;
+					case "toString":
+						return "Recorded response";
+					default:
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	/**
+	 * @return an Assertable without model item, for assertions which are evaluated directly
+	 */
+	public static Assertable assertable() {
+		return (Assertable) Proxy.newProxyInstance(MessageExchanges.class.getClassLoader(),
+				new Class<?>[]{Assertable.class}, (proxy, method, args) -> defaultValue(method.getReturnType()));
+	}
+
+	private static Object defaultValue(final Class<?> type) {
+		if (!type.isPrimitive() || type == void.class) {
+			return null;
+		} else if (type == boolean.class) {
+			return false;
+		} else if (type == char.class) {
+			return '\0';
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == float.class) {
+			return 0f;
+		} else if (type == double.class) {
+			return 0d;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		} else if (type == short.class) {
+			return (short) 0;
+		}
+		return 0;
+	}
+}
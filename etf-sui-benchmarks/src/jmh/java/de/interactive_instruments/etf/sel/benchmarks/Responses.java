@@ -0,0 +1,117 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.benchmarks;
+
+/**
+ * Synthetic WFS 2.0 and INSPIRE Atom responses of increasing size, modelled on
+ * recorded responses of download services.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class Responses {
+
+	public static final String FEATURE_NAMESPACE = "http://example.com/benchmark";
+
+	private Responses() {}
+
+	/**
+	 * @return a schema for the features of {@link #wfsFeatureCollection(int, String)}
+	 */
+	public static String featureSchema() {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"" + FEATURE_NAMESPACE
+				+ "\" xmlns:bm=\"" + FEATURE_NAMESPACE + "\" xmlns:wfs=\"http://www.opengis.net/wfs/2.0\" "
+				+ "elementFormDefault=\"qualified\">\n"
+				+ "<xs:element name=\"FeatureCollection\"><xs:complexType><xs:sequence>"
+				+ "<xs:element name=\"member\" minOccurs=\"0\" maxOccurs=\"unbounded\"><xs:complexType><xs:sequence>"
+				+ "<xs:element name=\"Building\"><xs:complexType><xs:sequence>"
+				+ "<xs:element name=\"name\" type=\"xs:string\"/>"
+				+ "<xs:element name=\"height\" type=\"xs:double\"/>"
+				+ "<xs:element name=\"position\" type=\"xs:string\"/>"
+				+ "</xs:sequence><xs:attribute name=\"id\" type=\"xs:ID\" use=\"required\"/></xs:complexType></xs:element>"
+				+ "</xs:sequence></xs:complexType></xs:element>"
+				+ "</xs:sequence><xs:attribute name=\"numberMatched\" type=\"xs:string\"/>"
+				+ "<xs:attribute name=\"numberReturned\" type=\"xs:nonNegativeInteger\"/></xs:complexType></xs:element>\n"
+				+ "</xs:schema>\n";
+	}
+
+	/**
+	 * @param features number of features
+	 * @param schemaLocation value of the xsi:schemaLocation attribute or null
+	 * @return a feature collection, valid against {@link #featureSchema()}
+	 */
+	public static String wfsFeatureCollection(final int features, final String schemaLocation) {
+		final StringBuilder builder = new StringBuilder(256 + features * 200);
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<bm:FeatureCollection xmlns:bm=\"")
+				.append(FEATURE_NAMESPACE).append("\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+		if (schemaLocation != null) {
+			builder.append(" xsi:schemaLocation=\"").append(FEATURE_NAMESPACE).append(' ').append(schemaLocation)
+					.append('"');
+		}
+		builder.append(" numberMatched=\"unknown\" numberReturned=\"").append(features).append("\">\n");
+		for (int i = 0; i < features; i++) {
+			builder.append("<bm:member><bm:Building id=\"b").append(i).append("\"><bm:name>Building ").append(i)
+					.append("</bm:name><bm:height>").append(10 + i % 90).append(".5</bm:height><bm:position>")
+					.append(50 + i % 10).append(".123 ").append(7 + i % 10)
+					.append(".456</bm:position></bm:Building></bm:member>\n");
+		}
+		return builder.append("</bm:FeatureCollection>\n").toString();
+	}
+
+	/**
+	 * @param entries number of dataset entries
+	 * @return an INSPIRE download service feed
+	 */
+	public static String atomFeed(final int entries) {
+		final StringBuilder builder = new StringBuilder(512 + entries * 500);
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<feed xmlns=\"http://www.w3.org/2005/Atom\" ")
+				.append("xmlns:georss=\"http://www.georss.org/georss\" ")
+				.append("xmlns:inspire_dls=\"http://inspire.ec.europa.eu/schemas/inspire_dls/1.0\" xml:lang=\"en\">\n")
+				.append("<title>Download Service</title><subtitle>Benchmark feed</subtitle>")
+				.append("<link href=\"http://localhost/atom/service.xml\" rel=\"self\" type=\"application/atom+xml\"/>")
+				.append("<link href=\"http://localhost/atom/opensearch.xml\" rel=\"search\" ")
+				.append("type=\"application/opensearchdescription+xml\"/>")
+				.append("<id>http://localhost/atom/service.xml</id><rights>none</rights>")
+				.append("<updated>2019-01-01T00:00:00Z</updated><author><name>ETF</name></author>\n");
+		for (int i = 0; i < entries; i++) {
+			builder.append("<entry><inspire_dls:spatial_dataset_identifier_code>dataset-").append(i)
+					.append("</inspire_dls:spatial_dataset_identifier_code>")
+					.append("<inspire_dls:spatial_dataset_identifier_namespace>http://localhost/")
+					.append("</inspire_dls:spatial_dataset_identifier_namespace>")
+					.append("<link href=\"http://localhost/atom/dataset-").append(i)
+					.append(".xml\" rel=\"alternate\" type=\"application/atom+xml\"/>")
+					.append("<id>http://localhost/atom/dataset-").append(i).append(".xml</id>")
+					.append("<title>Dataset ").append(i).append("</title>")
+					.append("<updated>2019-01-01T00:00:00Z</updated>")
+					.append("<georss:polygon>47 5 55 5 55 15 47 15 47 5</georss:polygon>")
+					.append("<category term=\"http://www.opengis.net/def/crs/EPSG/0/4258\" label=\"ETRS89\"/>")
+					.append("</entry>\n");
+		}
+		return builder.append("</feed>\n").toString();
+	}
+
+	/**
+	 * @return an OWS 1.1 exception report
+	 */
+	public static String owsExceptionReport() {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows/1.1\" version=\"2.0.0\">"
+				+ "<ows:Exception exceptionCode=\"InvalidParameterValue\" locator=\"typeNames\">"
+				+ "<ows:ExceptionText>Unknown feature type</ows:ExceptionText>"
+				+ "</ows:Exception></ows:ExceptionReport>\n";
+	}
+}
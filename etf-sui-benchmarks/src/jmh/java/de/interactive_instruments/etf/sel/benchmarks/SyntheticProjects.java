@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+
+/**
+ * Writes synthetic SoapUI projects for the benchmarks.
+ *
+ * Each Test Case contains Groovy script steps and HTTP request steps with
+ * XPath and Groovy script assertions. Every Test Case except the first one of
+ * a Test Suite calls the first one with a Run Test Case step.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class SyntheticProjects {
+
+	private SyntheticProjects() {}
+
+	private static String id(final String name) {
+		return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	/**
+	 * @param projectFile file the project is written to
+	 * @param testSuites number of Test Suites
+	 * @param testCases number of Test Cases per Test Suite
+	 * @param testSteps number of Groovy and of HTTP request steps per Test Case
+	 * @return the project file
+	 */
+	public static File write(final File projectFile, final int testSuites, final int testCases, final int testSteps)
+			throws IOException {
+		try (final Writer writer = Files.newBufferedWriter(projectFile.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<con:soapui-project id=\"" + id("project") + "\" name=\"Synthetic project\" "
+					+ "resourceRoot=\"\" soapui-version=\"5.2.1\" xmlns:con=\"http://eviware.com/soapui/config\">\n");
+			writer.write("<con:settings/>\n");
+			for (int s = 0; s < testSuites; s++) {
+				writer.write("<con:testSuite id=\"" + id("ts" + s) + "\" name=\"Test Suite " + s + "\">\n");
+				writer.write("<con:settings/><con:runType>SEQUENTIAL</con:runType>\n");
+				for (int c = 0; c < testCases; c++) {
+					writeTestCase(writer, s, c, testSteps);
+				}
+				writer.write("<con:properties/>\n</con:testSuite>\n");
+			}
+			writer.write("<con:properties/><con:wssContainer/>\n</con:soapui-project>\n");
+		}
+		return projectFile;
+	}
+
+	private static void writeTestCase(final Writer writer, final int s, final int c, final int testSteps)
+			throws IOException {
+		final String prefix = s + "." + c;
+		writer.write("<con:testCase id=\"" + id("tc" + prefix) + "\" name=\"Test Case " + prefix + "\" "
+				+ "failOnError=\"true\" failTestCaseOnErrors=\"true\" keepSession=\"false\" maxResults=\"0\" "
+				+ "searchProperties=\"true\">\n<con:settings/>\n");
+		if (c > 0) {
+			writer.write("<con:testStep type=\"calltestcase\" name=\"Dependency\" id=\"" + id("dep" + prefix) + "\">"
+					+ "<con:settings/><con:config xsi:type=\"con:RunTestCaseStep\" "
+					+ "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+					+ "<con:targetTestCase>" + id("tc" + s + ".0") + "</con:targetTestCase>"
+					+ "<con:properties/><con:returnProperties/><con:runMode>PARALLELL</con:runMode>"
+					+ "</con:config></con:testStep>\n");
+		}
+		for (int i = 0; i < testSteps; i++) {
+			final String stepPrefix = prefix + "." + i;
+			writer.write("<con:testStep type=\"groovy\" name=\"Script " + i + "\" id=\"" + id("gs" + stepPrefix)
+					+ "\"><con:settings/><con:config><script><![CDATA[def features = context.expand('${#Project#features}')\n"
+					+ "log.info(\"Step " + stepPrefix + ": \" + features)\n"
+					+ "assert features != null]]></script></con:config></con:testStep>\n");
+			writer.write("<con:testStep type=\"httprequest\" name=\"GetFeature " + i + "\" id=\"" + id("hr" + stepPrefix)
+					+ "\"><con:settings/><con:config method=\"GET\" xsi:type=\"con:HttpRequest\" id=\""
+					+ id("rq" + stepPrefix) + "\" name=\"GetFeature " + i + "\" postQueryString=\"false\" "
+					+ "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><con:settings/>"
+					+ "<con:endpoint>http://localhost/wfs?SERVICE=WFS&amp;REQUEST=GetFeature&amp;COUNT=" + i
+					+ "</con:endpoint><con:request/>"
+					+ "<con:assertion type=\"XPath Match\" id=\"" + id("xp" + stepPrefix) + "\" name=\"Feature count\">"
+					+ "<con:configuration><path>declare namespace wfs='http://www.opengis.net/wfs/2.0';\n"
+					+ "count(/wfs:FeatureCollection/wfs:member) &gt; 0</path><content>true</content>"
+					+ "<allowWildcards>false</allowWildcards><ignoreNamspaceDifferences>false</ignoreNamspaceDifferences>"
+					+ "<ignoreComments>false</ignoreComments></con:configuration></con:assertion>"
+					+ "<con:assertion type=\"GroovyScriptAssertion\" id=\"" + id("ga" + stepPrefix)
+					+ "\" name=\"Response\"><con:configuration><scriptText><![CDATA["
+					+ "def a = new de.interactive_instruments.etf.suim.Assert(messageExchange, context, log)\n"
+					+ "a.exists('/*:FeatureCollection')]]></scriptText></con:configuration></con:assertion>"
+					+ "<con:credentials><con:authType>No Authorization</con:authType></con:credentials>"
+					+ "<con:jmsConfig JMSDeliveryMode=\"PERSISTENT\"/><con:jmsPropertyConfig/><con:parameters/>"
+					+ "</con:config></con:testStep>\n");
+		}
+		writer.write("<con:properties/>\n</con:testCase>\n");
+	}
+}
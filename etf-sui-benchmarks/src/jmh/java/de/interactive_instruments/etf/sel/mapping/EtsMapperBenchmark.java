@@ -0,0 +1,82 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.eviware.soapui.impl.wsdl.WsdlProject;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.interactive_instruments.etf.dal.dto.test.ExecutableTestSuiteDto;
+import de.interactive_instruments.etf.sel.benchmarks.SyntheticProjects;
+
+/**
+ * Mapping synthetic SoapUI projects of increasing size to Executable Test Suites
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class EtsMapperBenchmark {
+
+	// Number of Test Cases per Test Suite, the project has 5 Test Suites
+	@Param({"10", "100", "500"})
+	public int testCases;
+
+	private File projectFile;
+	private WsdlProject project;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final File dir = Files.createTempDirectory("etf-sel-bm").toFile();
+		projectFile = SyntheticProjects.write(new File(dir, "synthetic-soapui-project.xml"), 5, testCases, 3);
+		project = new WsdlProject(projectFile.getAbsolutePath());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		project.release();
+		EtsMapper.clearCache();
+		Files.deleteIfExists(projectFile.toPath());
+		Files.deleteIfExists(projectFile.getParentFile().toPath());
+	}
+
+	@Benchmark
+	public ExecutableTestSuiteDto map() {
+		EtsMapper.clearCache();
+		return new EtsMapper(project).toTestTaskResult();
+	}
+
+	@Benchmark
+	public ExecutableTestSuiteDto mapCached() {
+		return new EtsMapper(project).toTestTaskResult();
+	}
+
+	/**
+	 * Loads the project and maps it
+	 */
+	@Benchmark
+	public ExecutableTestSuiteDto loadAndMap() throws InterruptedException {
+		EtsMapper.clearCache();
+		return new EtsBatchMapper(1).map(Collections.singletonList(projectFile)).get(0).getExecutableTestSuite();
+	}
+}
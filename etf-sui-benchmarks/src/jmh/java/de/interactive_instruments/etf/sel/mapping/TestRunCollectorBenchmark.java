@@ -0,0 +1,79 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.interactive_instruments.etf.testdriver.TestResultCollector;
+
+/**
+ * Parsing and passing assertion messages to the Test Result Collector
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TestRunCollectorBenchmark {
+
+	// Number of token arguments of the etfTranslate message
+	@Param({"1", "10", "100"})
+	public int tokens;
+
+	private String translateMessage;
+	private String manualMessage;
+	private String plainMessage;
+	private TestResultCollector collector;
+
+	@Setup
+	public void setUp() {
+		final StringBuilder arguments = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			arguments.append("<TOKEN").append(i).append(">value ").append(i).append(" of feature b").append(i)
+					.append("</TOKEN").append(i).append('>');
+		}
+		translateMessage = "Assertion failed: <etfTranslate what='TR.invalidValue'>" + arguments + "</etfTranslate>";
+		manualMessage = "<etfTranslate what='TR.manual.checkValue'>" + arguments + "</etfTranslate>";
+		final StringBuilder plain = new StringBuilder("Assertion failed:");
+		for (int i = 0; i < tokens; i++) {
+			plain.append(" expected value ").append(i).append(" but got something else;");
+		}
+		plainMessage = plain.toString();
+		collector = new DummyCollector();
+	}
+
+	@Benchmark
+	public EtfTranslateMessage parse() {
+		return EtfTranslateMessage.parse(translateMessage);
+	}
+
+	@Benchmark
+	public boolean addTranslateMessage() {
+		return TestRunCollector.addMessage(translateMessage, collector, 0);
+	}
+
+	@Benchmark
+	public boolean addManualMessage() {
+		return TestRunCollector.addMessage(manualMessage, collector, 0);
+	}
+
+	@Benchmark
+	public boolean addPlainMessage() {
+		return TestRunCollector.addMessage(plainMessage, collector, 0);
+	}
+}
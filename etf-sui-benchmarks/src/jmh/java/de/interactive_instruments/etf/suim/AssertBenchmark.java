@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.suim;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.eviware.soapui.model.iface.MessageExchange;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.interactive_instruments.etf.sel.benchmarks.MessageExchanges;
+import de.interactive_instruments.etf.sel.benchmarks.Responses;
+
+/**
+ * The Assert helpers of the owsgtl on INSPIRE Atom feeds of increasing size
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AssertBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int entries;
+
+	private MessageExchange atomFeed;
+	private Map<String, String> namespaces;
+	private Assert assertion;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		atomFeed = MessageExchanges.recorded(Responses.atomFeed(entries));
+		namespaces = (Map<String, String>) Assert.INSPIRE_DS_NS;
+		assertion = newAssert();
+	}
+
+	private Assert newAssert() {
+		return new Assert(atomFeed, null, null, namespaces);
+	}
+
+	/**
+	 * Parses the response and checks it for exception reports and HTML
+	 */
+	@Benchmark
+	public Assert create() {
+		return newAssert();
+	}
+
+	@Benchmark
+	public Object exists() {
+		return assertion.exists("/atom:feed/atom:entry[last()]/atom:id");
+	}
+
+	@Benchmark
+	public void isTrue() {
+		assertion.isTrue("count(/atom:feed/atom:entry[georss:polygon]) = " + entries, "TR.invalidValue");
+	}
+
+	@Benchmark
+	public void notExists() {
+		assertion.notExists("/atom:feed/atom:entry[not(inspire_dls:spatial_dataset_identifier_code)]");
+	}
+
+	@Benchmark
+	public String existsNonEmptyTextMatching() {
+		return assertion.existsNonEmptyTextMatching("/atom:feed/atom:entry[last()]/atom:updated",
+				"\\d{4}-\\d{2}-\\d{2}T.*");
+	}
+}
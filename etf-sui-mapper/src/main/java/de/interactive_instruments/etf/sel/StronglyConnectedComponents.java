@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel;
+
+import java.util.*;
+
+/**
+ * Finds the strongly connected components of a directed graph with Tarjan's algorithm.
+ *
+ * The algorithm is implemented iteratively, so long dependency chains can not
+ * overflow the stack. Nodes are identified by their index.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class StronglyConnectedComponents {
+
+	private StronglyConnectedComponents() {
+
+	}
+
+	/**
+	 * Returns the strongly connected components in reverse topological order,
+	 * so a component comes after all components it has edges to.
+	 *
+	 * @param edges the indices of the nodes each node has an edge to
+	 * @return the node indices of each component
+	 */
+	public static List<BitSet> find(final int[][] edges) {
+		final int size = edges.length;
+		final int[] index = new int[size];
+		final int[] lowLink = new int[size];
+		final int[] edge = new int[size];
+		Arrays.fill(index, -1);
+		final BitSet onStack = new BitSet(size);
+		final Deque<Integer> stack = new ArrayDeque<>();
+		final Deque<Integer> callStack = new ArrayDeque<>();
+		final List<BitSet> components = new ArrayList<>();
+		int counter = 0;
+		for (int root = 0; root < size; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			callStack.push(root);
+			index[root] = lowLink[root] = counter++;
+			stack.push(root);
+			onStack.set(root);
+			while (!callStack.isEmpty()) {
+				final int node = callStack.peek();
+				if (edge[node] < edges[node].length) {
+					final int next = edges[node][edge[node]++];
+					if (index[next] == -1) {
+						index[next] = lowLink[next] = counter++;
+						stack.push(next);
+						onStack.set(next);
+						callStack.push(next);
+					} else if (onStack.get(next)) {
+						lowLink[node] = Math.min(lowLink[node], index[next]);
+					}
+				} else {
+					callStack.pop();
+					if (!callStack.isEmpty()) {
+						final int parent = callStack.peek();
+						lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+					}
+					if (lowLink[node] == index[node]) {
+						final BitSet component = new BitSet(size);
+						int member;
+						do {
+							member = stack.pop();
+							onStack.clear(member);
+							component.set(member);
+						} while (member != node);
+						components.add(component);
+					}
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * Returns true if the component contains more than one node or a node with an edge to itself
+	 *
+	 * @param component component returned by {@link #find(int[][])}
+	 * @param edges the edges passed to {@link #find(int[][])}
+	 * @return true if the component is a cycle
+	 */
+	public static boolean isCycle(final BitSet component, final int[][] edges) {
+		if (component.cardinality() > 1) {
+			return true;
+		}
+		final int node = component.nextSetBit(0);
+		for (final int next : edges[node]) {
+			if (next == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -15,6 +15,8 @@
  */
 package de.interactive_instruments.etf.sel;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 
 import com.eviware.soapui.SoapUI;
@@ -126,6 +128,26 @@ final public class Utils {
 		return str;
 	}
 
+	/**
+	 * Computes the SHA-256 hash of the bytes
+	 *
+	 * @param bytes input
+	 * @return hash as lower case hex string
+	 */
+	public static String sha256(final byte[] bytes) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		final StringBuilder hex = new StringBuilder(64);
+		for (final byte b : digest.digest(bytes)) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
 	public static void initLogger() {
 		final Log4JMonitor logMonitor = SoapUI.getLogMonitor();
 		final String selLogName = "de.interactive_instruments.etf.sel";
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.eviware.soapui.impl.wsdl.WsdlProject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.interactive_instruments.etf.dal.dto.test.ExecutableTestSuiteDto;
+
+/**
+ * Loads several SoapUI projects one after another and maps them concurrently.
+ *
+ * SoapUI does not declare the loading of projects as thread safe. Only one project
+ * is therefore loaded or released at a time by all instances of this class. The mapping of the loaded projects, which only reads the
+ * project model, runs on a fixed number of threads. The number of threads can be
+ * set with the system property {@code etf.sel.mapping.threads} and defaults to
+ * the number of available processors. The results are returned in the order of
+ * the project files. A project that can not be loaded or mapped does not affect
+ * the other projects, its result contains the exception instead of the
+ * Executable Test Suite.
+ *
+ * Project files that have not changed since they were mapped last are not
+ * loaded again, see {@link EtsMapper#getCachedTestTaskResult(File)}.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public class EtsBatchMapper {
+
+	private static final int DEFAULT_THREADS = Integer.getInteger("etf.sel.mapping.threads",
+			Runtime.getRuntime().availableProcessors());
+
+	// Serializes the loading and releasing of projects
+	private static final Object PROJECT_LOCK = new Object();
+
+	private final Logger logger = LoggerFactory.getLogger(EtsBatchMapper.class);
+	private final int threads;
+
+	/**
+	 * Result of loading and mapping one project file
+	 */
+	public static final class Result {
+		private final File projectFile;
+		private final ExecutableTestSuiteDto executableTestSuite;
+		private final Exception exception;
+		private final boolean cached;
+		private final long loadTime;
+		private final long mappingTime;
+
+		private Result(final File projectFile, final ExecutableTestSuiteDto executableTestSuite,
+				final Exception exception, final boolean cached, final long loadTime, final long mappingTime) {
+			this.projectFile = projectFile;
+			this.executableTestSuite = executableTestSuite;
+			this.exception = exception;
+			this.cached = cached;
+			this.loadTime = loadTime;
+			this.mappingTime = mappingTime;
+		}
+
+		public File getProjectFile() {
+			return projectFile;
+		}
+
+		/**
+		 * @return the Executable Test Suite or null if the project could not be loaded or mapped
+		 */
+		public ExecutableTestSuiteDto getExecutableTestSuite() {
+			return executableTestSuite;
+		}
+
+		/**
+		 * @return the exception thrown while loading or mapping the project, an ExecutionException
+		 * with the error as cause if an error was thrown, or null
+		 */
+		public Exception getException() {
+			return exception;
+		}
+
+		public boolean isSuccessful() {
+			return exception == null;
+		}
+
+		/**
+		 * @return true if the Executable Test Suite has been taken from the cache without loading the project
+		 */
+		public boolean isCached() {
+			return cached;
+		}
+
+		/**
+		 * @return time in milliseconds needed to load the project, without the time spent waiting
+		 * for the load of other projects
+		 */
+		public long getLoadTime() {
+			return loadTime;
+		}
+
+		/**
+		 * @return time in milliseconds needed to map the project
+		 */
+		public long getMappingTime() {
+			return mappingTime;
+		}
+	}
+
+	public EtsBatchMapper() {
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param threads maximum number of projects which are mapped at the same time
+	 */
+	public EtsBatchMapper(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Loads and maps the projects
+	 *
+	 * @param projectFiles SoapUI project files
+	 * @return one result for each project file, in the order of the project files
+	 * @throws InterruptedException if the thread has been interrupted while waiting for the results
+	 */
+	public List<Result> map(final Collection<File> projectFiles) throws InterruptedException {
+		if (projectFiles.isEmpty()) {
+			return new ArrayList<>(0);
+		}
+		final long start = System.currentTimeMillis();
+		final AtomicInteger threadCounter = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, projectFiles.size()), r -> {
+			final Thread thread = new Thread(r, "etf-sel-mapper-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final List<Future<Result>> futures = new ArrayList<>(projectFiles.size());
+			for (final File projectFile : projectFiles) {
+				futures.add(executor.submit(() -> map(projectFile)));
+			}
+			final List<Result> results = new ArrayList<>(futures.size());
+			int failed = 0;
+			final Iterator<File> projectFileIterator = projectFiles.iterator();
+			for (final Future<Result> future : futures) {
+				final File projectFile = projectFileIterator.next();
+				Result result;
+				try {
+					result = future.get();
+				} catch (final ExecutionException e) {
+					// map(File) catches exceptions, but not errors like a NoClassDefFoundError
+					logger.error("Could not load and map project {}", projectFile, e.getCause());
+					result = new Result(projectFile, null, e, false, 0, 0);
+				}
+				if (!result.isSuccessful()) {
+					failed++;
+				}
+				results.add(result);
+			}
+			logger.info("Mapped {} projects in {} ms, {} failed", results.size(),
+					System.currentTimeMillis() - start, failed);
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Result map(final File projectFile) {
+		final ExecutableTestSuiteDto cachedEts = EtsMapper.getCachedTestTaskResult(projectFile);
+		if (cachedEts != null) {
+			logger.debug("Project {} not changed", projectFile);
+			return new Result(projectFile, cachedEts, null, true, 0, 0);
+		}
+		long loadStart = 0;
+		long loadTime = 0;
+		WsdlProject project = null;
+		try {
+			synchronized (PROJECT_LOCK) {
+				loadStart = System.currentTimeMillis();
+				project = new WsdlProject(projectFile.getPath());
+				loadTime = System.currentTimeMillis() - loadStart;
+			}
+			final long mappingStart = System.currentTimeMillis();
+			final ExecutableTestSuiteDto ets = new EtsMapper(project).toTestTaskResult();
+			final long mappingTime = System.currentTimeMillis() - mappingStart;
+			logger.debug("Project {} loaded in {} ms and mapped in {} ms", projectFile, loadTime, mappingTime);
+			return new Result(projectFile, ets, null, false, loadTime, mappingTime);
+		} catch (final Exception e) {
+			logger.error("Could not load and map project {}", projectFile, e);
+			if (project == null && loadStart != 0) {
+				loadTime = System.currentTimeMillis() - loadStart;
+			}
+			return new Result(projectFile, null, e, false, loadTime, 0);
+		} finally {
+			if (project != null) {
+				synchronized (PROJECT_LOCK) {
+					project.release();
+				}
+			}
+		}
+	}
+}
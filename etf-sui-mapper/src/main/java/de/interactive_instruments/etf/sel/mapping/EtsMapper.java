@@ -22,10 +22,14 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLStreamException;
 
 import com.eviware.soapui.SoapUI;
 import com.eviware.soapui.impl.support.http.HttpRequestTestStep;
 import com.eviware.soapui.impl.wsdl.WsdlProject;
+import com.eviware.soapui.impl.wsdl.testcase.WsdlTestCase;
 import com.eviware.soapui.impl.wsdl.teststeps.WsdlGroovyScriptTestStep;
 import com.eviware.soapui.impl.wsdl.teststeps.WsdlMessageAssertion;
 import com.eviware.soapui.impl.wsdl.teststeps.assertions.basic.*;
@@ -45,20 +49,34 @@ import de.interactive_instruments.LogUtils;
 import de.interactive_instruments.SUtils;
 import de.interactive_instruments.TimeUtils;
 import de.interactive_instruments.UriUtils;
-import de.interactive_instruments.container.Pair;
 import de.interactive_instruments.etf.dal.dto.MetaDataItemDto;
 import de.interactive_instruments.etf.dal.dto.RepositoryItemDto;
 import de.interactive_instruments.etf.dal.dto.capabilities.TestObjectTypeDto;
 import de.interactive_instruments.etf.dal.dto.test.*;
 import de.interactive_instruments.etf.model.EID;
 import de.interactive_instruments.etf.model.EidFactory;
+import de.interactive_instruments.etf.sel.Utils;
 import de.interactive_instruments.etf.sel.assertions.OwsExceptionReportAssertion;
 import de.interactive_instruments.etf.sel.assertions.SchemaAssertion;
-import de.interactive_instruments.etf.sel.teststeps.SuiTestCaseDependencyDecorator;
-import de.interactive_instruments.etf.sel.teststeps.TestCaseDependency;
+import de.interactive_instruments.etf.sel.teststeps.TestCaseDependencyGraph;
 import de.interactive_instruments.exceptions.ExcUtils;
 
 /**
+ * Maps a SoapUI project to an Executable Test Suite.
+ *
+ * The result is cached per project file. If the hash of the project file has
+ * not changed, a copy of the previous result is returned. Otherwise only the
+ * Test Cases whose configuration has changed are mapped again, the Test Steps
+ * of all other Test Cases are copied from the previous result. The cached DTOs
+ * are never passed to callers, so callers may modify the returned DTOs. The
+ * cache can be disabled with the system property {@code etf.sel.mapping.cache=false}.
+ *
+ * With the system property {@code etf.sel.mapping.lazy=true} the scripts of
+ * Groovy Test Steps and the expressions of Groovy, XPath and XQuery assertions
+ * are not copied into the DTOs. The DTOs only reference the items in the
+ * project file, the text is read once when it is first accessed and only if
+ * the project file has not been changed since.
+ *
  * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
  */
 public class EtsMapper {
@@ -67,8 +85,45 @@ public class EtsMapper {
 	public static String DEFAULT_VERSION = "1.0.0";
 	private Date fallbackDate = new Date();
 
+	private static final boolean CACHE_ENABLED = !"false".equals(System.getProperty("etf.sel.mapping.cache"));
+
+	private static final boolean LAZY_TEXT = Boolean.getBoolean("etf.sel.mapping.lazy");
+
+	// Last result for each project, keyed by the project path
+	private static final Map<String, Mapping> mappings = new ConcurrentHashMap<>();
+
+	private static final class Mapping {
+		private final String hash;
+		// private copy, which is only read
+		private final ExecutableTestSuiteDto etsDto;
+		// hashes of the Test Case configurations, keyed by the Test Case ID
+		private final Map<String, String> fingerprints;
+		// Test Cases of the private copy, keyed by the Test Case ID
+		private final Map<String, TestCaseDto> testCases = new HashMap<>();
+
+		private Mapping(final String hash, final ExecutableTestSuiteDto etsDto,
+				final Map<String, String> fingerprints) {
+			this.hash = hash;
+			this.etsDto = etsDto;
+			this.fingerprints = fingerprints;
+			if (etsDto.getTestModules() != null) {
+				for (final TestModuleDto testModule : etsDto.getTestModules()) {
+					if (testModule.getTestCases() != null) {
+						for (final TestCaseDto testCase : testModule.getTestCases()) {
+							testCases.put(testCase.getId().toString(), testCase);
+						}
+					}
+				}
+			}
+		}
+	}
+
 	private final WsdlProject project;
 
+	// IDs of the items whose text can be read from the project file
+	private Set<String> persistedItemIds = Collections.emptySet();
+	private String projectHash;
+
 	public EtsMapper(final WsdlProject project) {
 		this.project = project;
 	}
@@ -106,18 +161,81 @@ public class EtsMapper {
 		}
 	}
 
+	/**
+	 * Returns the cached Executable Test Suite of a project file, without loading the project
+	 *
+	 * @param projectFile SoapUI project file
+	 * @return a copy of the Executable Test Suite or null if the project file has not been mapped
+	 * or has been changed since
+	 */
+	public static ExecutableTestSuiteDto getCachedTestTaskResult(final File projectFile) {
+		final Mapping mapping = mappings.get(projectFile.getPath());
+		if (mapping != null && mapping.hash.equals(hash(projectFile))) {
+			return copy(mapping.etsDto);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes all cached Executable Test Suites
+	 */
+	public static void clearCache() {
+		mappings.clear();
+	}
+
+	private static String hash(final File projectFile) {
+		try {
+			return UriUtils.hashFromTimestampOrContent(projectFile.toURI());
+		} catch (IOException e) {
+			ExcUtils.suppress(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Hash of the Test Case configuration, which contains the Test Steps and
+	 * their assertions
+	 *
+	 * @return hash or null if the configuration is not accessible
+	 */
+	private static String fingerprint(final TestCase testCase) {
+		if (!(testCase instanceof WsdlTestCase)) {
+			return null;
+		}
+		return Utils.sha256(((WsdlTestCase) testCase).getConfig().xmlText().getBytes(StandardCharsets.UTF_8));
+	}
+
 	public ExecutableTestSuiteDto toTestTaskResult() {
+		final File projectFile = new File(project.getPath());
+		final String hash = hash(projectFile);
+		final Mapping previous = CACHE_ENABLED ? mappings.get(projectFile.getPath()) : null;
+		if (previous != null && previous.hash.equals(hash)) {
+			return copy(previous.etsDto);
+		}
+		final Map<String, String> fingerprints = new HashMap<>();
+		final ExecutableTestSuiteDto etsDto = toTestTaskResult(hash, previous, fingerprints);
+		if (CACHE_ENABLED && hash != null) {
+			mappings.put(projectFile.getPath(), new Mapping(hash, copy(etsDto), fingerprints));
+		}
+		return etsDto;
+	}
+
+	private ExecutableTestSuiteDto toTestTaskResult(final String hash, final Mapping previous,
+			final Map<String, String> fingerprints) {
 		final ExecutableTestSuiteDto etsDto = new ExecutableTestSuiteDto();
 		setFromProperties(etsDto, project);
 		setFromModelItem(etsDto, project);
 		etsDto.setLocalPath(project.getPath());
-		final File projectFile = new File(project.getPath());
-		try {
-			final String hash = UriUtils.hashFromTimestampOrContent(projectFile.toURI());
-			etsDto.setItemHash(hash);
-		} catch (IOException e) {
-			ExcUtils.suppress(e);
-			etsDto.setItemHash("0");
+		etsDto.setItemHash(hash != null ? hash : "0");
+		if (LAZY_TEXT && hash != null && new File(project.getPath()).isFile()) {
+			try {
+				projectHash = hash;
+				persistedItemIds = ProjectItemText.readIds(new File(project.getPath()), hash);
+			} catch (IOException | XMLStreamException e) {
+				LoggerFactory.getLogger(EtsMapper.class).warn(
+						"Could not read the item IDs of project {}, scripts are copied into the DTOs",
+						project.getPath(), e);
+			}
 		}
 
 		if (project.hasProperty(ETF_SUPPORTED_TESTOBJECT_TYPE_IDS_PK)) {
@@ -139,7 +257,7 @@ public class EtsMapper {
 		}
 
 		final Map<String, TestCaseDto> allTestCases = new HashMap<>();
-		final List<Pair<TestCaseDto, Collection<TestCaseDependency>>> testCasesRequiringDeps = new ArrayList<>();
+		int reusedTestCases = 0;
 
 		if (project.getTestSuiteList() != null) {
 			for (int tsi = 0; tsi < project.getTestSuiteCount(); tsi++) {
@@ -151,31 +269,160 @@ public class EtsMapper {
 						final TestCase testCase = testSuite.getTestCaseAt(tci);
 						final TestCaseDto testCaseDto = new TestCaseDto();
 						setFromModelItem(testCaseDto, testCase);
-						testCaseDto.setTestSteps(testStepsToDto(testCase.getTestStepList()));
+						final String testCaseId = testCaseDto.getId().toString();
+						final String fingerprint = CACHE_ENABLED ? fingerprint(testCase) : null;
+						final TestCaseDto mapped = previous != null && fingerprint != null
+								&& fingerprint.equals(previous.fingerprints.get(testCaseId))
+										? previous.testCases.get(testCaseId)
+										: null;
+						final List<TestStepDto> testSteps;
+						if (mapped != null) {
+							testSteps = copyTestSteps(mapped.getTestSteps(), hash);
+							reusedTestCases++;
+						} else {
+							testSteps = testStepsToDto(testCase.getTestStepList());
+						}
+						if (fingerprint != null) {
+							fingerprints.put(testCaseId, fingerprint);
+						}
+						testCaseDto.setTestSteps(testSteps);
 						testModuleDto.addTestCase(testCaseDto);
 						allTestCases.put(testCase.getId(), testCaseDto);
-						final Collection<TestCaseDependency> deps = SuiTestCaseDependencyDecorator.getDependencies(testCase);
-						if (deps != null) {
-							testCasesRequiringDeps.add(new Pair<>(testCaseDto, deps));
-						}
 					}
 				}
 				etsDto.addTestModule(testModuleDto);
 			}
 		}
-		for (final Pair<TestCaseDto, Collection<TestCaseDependency>> testCasePair : testCasesRequiringDeps) {
-			final Collection<TestCaseDependency> deps = testCasePair.getRight();
-			for (final TestCaseDependency dep : deps) {
-				final TestCaseDto testCaseDto = allTestCases.get(dep.getId());
-				if (testCaseDto != null) {
-					testCasePair.getLeft().addDependency(testCaseDto);
+		final TestCaseDependencyGraph dependencyGraph = TestCaseDependencyGraph.build(project);
+		if (dependencyGraph.hasCycles()) {
+			LoggerFactory.getLogger(EtsMapper.class).error(
+					"Executable Test Suite {} contains cyclic Test Case dependencies: {}",
+					etsDto.getId(), dependencyGraph.describeCycles());
+		}
+		for (final TestCase testCase : dependencyGraph.getTestCases()) {
+			final TestCaseDto testCaseDto = allTestCases.get(testCase.getId());
+			for (final TestCase dependency : dependencyGraph.getDependencies(testCase)) {
+				final TestCaseDto dependencyDto = allTestCases.get(dependency.getId());
+				if (testCaseDto != null && dependencyDto != null) {
+					testCaseDto.addDependency(dependencyDto);
 				}
 			}
 		}
+		if (previous != null) {
+			LoggerFactory.getLogger(EtsMapper.class).debug(
+					"Remapped Executable Test Suite {}, {} of {} Test Cases unchanged",
+					etsDto.getId(), reusedTestCases, allTestCases.size());
+		}
 
 		return etsDto;
 	}
 
+	/**
+	 * Copies the DTO graph of an Executable Test Suite. Only the properties set by the
+	 * mapper are copied. The Test Object Types and the Test Item Types are shared.
+	 */
+	private static ExecutableTestSuiteDto copy(final ExecutableTestSuiteDto etsDto) {
+		final ExecutableTestSuiteDto copy = new ExecutableTestSuiteDto();
+		copyRepositoryItem(etsDto, copy);
+		copy.setLocalPath(etsDto.getLocalPath());
+		copy.setItemHash(etsDto.getItemHash());
+		if (etsDto.getSupportedTestObjectTypes() != null) {
+			for (final TestObjectTypeDto testObjectType : etsDto.getSupportedTestObjectTypes()) {
+				copy.addSupportedTestObjectType(testObjectType);
+			}
+		}
+		if (etsDto.getTestModules() != null) {
+			final Map<TestCaseDto, TestCaseDto> testCaseCopies = new IdentityHashMap<>();
+			for (final TestModuleDto testModule : etsDto.getTestModules()) {
+				final TestModuleDto testModuleCopy = new TestModuleDto();
+				copyMetaDataItem(testModule, testModuleCopy);
+				if (testModule.getTestCases() != null) {
+					for (final TestCaseDto testCase : testModule.getTestCases()) {
+						final TestCaseDto testCaseCopy = new TestCaseDto();
+						copyMetaDataItem(testCase, testCaseCopy);
+						testCaseCopy.setTestSteps(copyTestSteps(testCase.getTestSteps(), etsDto.getItemHash()));
+						testModuleCopy.addTestCase(testCaseCopy);
+						testCaseCopies.put(testCase, testCaseCopy);
+					}
+				}
+				copy.addTestModule(testModuleCopy);
+			}
+			for (final Map.Entry<TestCaseDto, TestCaseDto> testCase : testCaseCopies.entrySet()) {
+				if (testCase.getKey().getDependencies() != null) {
+					for (final TestCaseDto dependency : testCase.getKey().getDependencies()) {
+						final TestCaseDto dependencyCopy = testCaseCopies.get(dependency);
+						if (dependencyCopy != null) {
+							testCase.getValue().addDependency(dependencyCopy);
+						}
+					}
+				}
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * @param projectHash hash of the project file the copies belong to
+	 */
+	private static List<TestStepDto> copyTestSteps(final List<TestStepDto> testSteps, final String projectHash) {
+		if (testSteps == null) {
+			return null;
+		}
+		final List<TestStepDto> copies = new ArrayList<>(testSteps.size());
+		for (final TestStepDto testStep : testSteps) {
+			final TestStepDto copy;
+			if (testStep instanceof LazyTestStepDto) {
+				copy = ((LazyTestStepDto) testStep).createLazyCopy(projectHash);
+			} else {
+				copy = new TestStepDto();
+				copy.setStatementForExecution(testStep.getStatementForExecution());
+			}
+			copyMetaDataItem(testStep, copy);
+			copy.setType(testStep.getType());
+			copy.setTestAssertions(copyTestAssertions(testStep.getTestAssertions(), projectHash));
+			copies.add(copy);
+		}
+		return copies;
+	}
+
+	private static List<TestAssertionDto> copyTestAssertions(final List<TestAssertionDto> testAssertions,
+			final String projectHash) {
+		if (testAssertions == null) {
+			return null;
+		}
+		final List<TestAssertionDto> copies = new ArrayList<>(testAssertions.size());
+		for (final TestAssertionDto testAssertion : testAssertions) {
+			final TestAssertionDto copy;
+			if (testAssertion instanceof LazyTestAssertionDto) {
+				copy = ((LazyTestAssertionDto) testAssertion).createLazyCopy(projectHash);
+			} else {
+				copy = new TestAssertionDto();
+				copy.setExpression(testAssertion.getExpression());
+				copy.setExpectedResult(testAssertion.getExpectedResult());
+			}
+			copyMetaDataItem(testAssertion, copy);
+			copy.setType(testAssertion.getType());
+			copies.add(copy);
+		}
+		return copies;
+	}
+
+	private static void copyMetaDataItem(final MetaDataItemDto item, final MetaDataItemDto copy) {
+		copy.setId(item.getId());
+		copy.setLabel(item.getLabel());
+		copy.setDescription(item.getDescription());
+		copy.setReference(item.getReference());
+	}
+
+	private static void copyRepositoryItem(final RepositoryItemDto item, final RepositoryItemDto copy) {
+		copyMetaDataItem(item, copy);
+		copy.setAuthor(item.getAuthor());
+		copy.setLastEditor(item.getLastEditor());
+		copy.setCreationDate(item.getCreationDate() != null ? new Date(item.getCreationDate().getTime()) : null);
+		copy.setLastUpdateDate(item.getLastUpdateDate() != null ? new Date(item.getLastUpdateDate().getTime()) : null);
+		copy.setVersionFromStr(item.getVersionAsStr());
+	}
+
 	private List<TestStepDto> testStepsToDto(final List<TestStep> testStepList) {
 		if (testStepList == null || testStepList.isEmpty()) {
 			return null;
@@ -184,7 +431,10 @@ public class EtsMapper {
 		for (int i = 0, testStepListSize = testStepList.size(); i < testStepListSize; i++) {
 			final TestStep testStep = testStepList.get(i);
 			if (testStep instanceof HttpRequestTestStep || testStep instanceof WsdlGroovyScriptTestStep) {
-				final TestStepDto testStepDto = new TestStepDto();
+				final ProjectItemText script = testStep instanceof WsdlGroovyScriptTestStep
+						? lazyText(testStep, "script")
+						: null;
+				final TestStepDto testStepDto = script != null ? new LazyTestStepDto(script) : new TestStepDto();
 				testStepDto.setId(EidFactory.getDefault().createUUID(testStep.getId()));
 				testStepDto.setLabel(testStep.getName());
 				testStepDto.setDescription(testStep.getDescription());
@@ -196,8 +446,10 @@ public class EtsMapper {
 					testStepDto.setStatementForExecution("NOT_APPLICABLE");
 				} else if (testStep instanceof WsdlGroovyScriptTestStep) {
 					testStepDto.setType(GROOVY_STEP_IT);
-					testStepDto.setStatementForExecution(
-							((WsdlGroovyScriptTestStep) testStep).getScript());
+					if (script == null) {
+						testStepDto.setStatementForExecution(
+								((WsdlGroovyScriptTestStep) testStep).getScript());
+					}
 				}
 				testSteps.add(testStepDto);
 			}
@@ -205,6 +457,34 @@ public class EtsMapper {
 		return testSteps;
 	}
 
+	/**
+	 * @return a reference to the text of the item in the project file or null if
+	 * the text must be copied
+	 */
+	private ProjectItemText lazyText(final ModelItem item, final String elementName) {
+		if (!persistedItemIds.contains(item.getId())) {
+			return null;
+		}
+		return new ProjectItemText(new File(project.getPath()), projectHash, item.getId(), elementName);
+	}
+
+	private TestAssertionDto newTestAssertionDto(final TestAssertion assertion) {
+		if (!assertion.isDisabled()) {
+			if (assertion instanceof GroovyScriptAssertion) {
+				final ProjectItemText script = lazyText(assertion, "scriptText");
+				if (script != null) {
+					return new LazyTestAssertionDto(script, null);
+				}
+			} else if (assertion instanceof XPathContainsAssertion || assertion instanceof XQueryContainsAssertion) {
+				final ProjectItemText path = lazyText(assertion, "path");
+				if (path != null) {
+					return new LazyTestAssertionDto(path, lazyText(assertion, "content"));
+				}
+			}
+		}
+		return new TestAssertionDto();
+	}
+
 	private List<TestAssertionDto> assertionsToDto(final List<TestAssertion> assertionList) {
 		if (assertionList == null || assertionList.isEmpty()) {
 			return null;
@@ -212,7 +492,8 @@ public class EtsMapper {
 		final List<TestAssertionDto> testAssertions = new ArrayList<>(assertionList.size());
 		for (int i = 0, assertionListSize = assertionList.size(); i < assertionListSize; i++) {
 			final TestAssertion assertion = assertionList.get(i);
-			final TestAssertionDto testAssertionDto = new TestAssertionDto();
+			final TestAssertionDto testAssertionDto = newTestAssertionDto(assertion);
+			final boolean lazy = testAssertionDto instanceof LazyTestAssertionDto;
 			setFromModelItem(testAssertionDto, assertion);
 
 			if (assertion.isDisabled()) {
@@ -222,18 +503,24 @@ public class EtsMapper {
 			} else if (assertion instanceof GroovyScriptAssertion) {
 				final GroovyScriptAssertion gassert = (GroovyScriptAssertion) assertion;
 				testAssertionDto.setType(GROOVY_ASSERTION_IT);
-				testAssertionDto.setExpression(gassert.getScriptText());
+				if (!lazy) {
+					testAssertionDto.setExpression(gassert.getScriptText());
+				}
 				testAssertionDto.setExpectedResult("NOT_APPLICABLE");
 			} else if (assertion instanceof XPathContainsAssertion) {
 				final XPathContainsAssertion xpassert = (XPathContainsAssertion) assertion;
 				testAssertionDto.setType(XPATH_MATCH_ASSERTION_IT);
-				testAssertionDto.setExpression(xpassert.getPath());
-				testAssertionDto.setExpectedResult(xpassert.getExpectedContent());
+				if (!lazy) {
+					testAssertionDto.setExpression(xpassert.getPath());
+					testAssertionDto.setExpectedResult(xpassert.getExpectedContent());
+				}
 			} else if (assertion instanceof XQueryContainsAssertion) {
 				final XQueryContainsAssertion xqassert = (XQueryContainsAssertion) assertion;
 				testAssertionDto.setType(XQUERY_MATCH_ASSERTION_IT);
-				testAssertionDto.setExpression(xqassert.getPath());
-				testAssertionDto.setExpectedResult(xqassert.getExpectedContent());
+				if (!lazy) {
+					testAssertionDto.setExpression(xqassert.getPath());
+					testAssertionDto.setExpectedResult(xqassert.getExpectedContent());
+				}
 			} else if (assertion instanceof SimpleContainsAssertion) {
 				final SimpleContainsAssertion scassert = (SimpleContainsAssertion) assertion;
 				testAssertionDto.setType(BASIC_ASSERTION_IT);
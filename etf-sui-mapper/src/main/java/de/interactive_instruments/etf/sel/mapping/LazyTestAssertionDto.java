@@ -0,0 +1,111 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import de.interactive_instruments.etf.dal.dto.test.TestAssertionDto;
+
+/**
+ * A Test Assertion whose expression and expected result are read from the
+ * project file on first access.
+ *
+ * The texts are loaded into the fields of the Test Assertion once, so later accesses,
+ * {@link #createCopy()} and marshalling through the getters see the same values.
+ * If a text can not be read, because the project file has been changed since
+ * mapping or can not be read, the getter throws an IllegalStateException and
+ * the text is read again on the next access.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class LazyTestAssertionDto extends TestAssertionDto {
+
+	private final ProjectItemText expression;
+	private final ProjectItemText expectedResult;
+	private volatile boolean expressionLoaded;
+	private volatile boolean expectedResultLoaded;
+
+	/**
+	 * @param expression reference to the expression
+	 * @param expectedResult reference to the expected result or null if it is set directly
+	 */
+	LazyTestAssertionDto(final ProjectItemText expression, final ProjectItemText expectedResult) {
+		this.expression = expression;
+		this.expectedResult = expectedResult;
+		this.expectedResultLoaded = expectedResult == null;
+	}
+
+	@Override
+	public String getExpression() {
+		if (!expressionLoaded) {
+			synchronized (this) {
+				if (!expressionLoaded) {
+					super.setExpression(expression.get());
+					expressionLoaded = true;
+				}
+			}
+		}
+		return super.getExpression();
+	}
+
+	@Override
+	public String getExpectedResult() {
+		if (!expectedResultLoaded) {
+			synchronized (this) {
+				if (!expectedResultLoaded) {
+					super.setExpectedResult(expectedResult.get());
+					expectedResultLoaded = true;
+				}
+			}
+		}
+		return super.getExpectedResult();
+	}
+
+	@Override
+	public void setExpression(final String expression) {
+		synchronized (this) {
+			super.setExpression(expression);
+			expressionLoaded = true;
+		}
+	}
+
+	@Override
+	public void setExpectedResult(final String expectedResult) {
+		synchronized (this) {
+			super.setExpectedResult(expectedResult);
+			expectedResultLoaded = true;
+		}
+	}
+
+	@Override
+	public TestAssertionDto createCopy() {
+		getExpression();
+		getExpectedResult();
+		return super.createCopy();
+	}
+
+	/**
+	 * @param projectHash hash of the project file the copy belongs to
+	 * @return a Test Assertion with the same references and the same directly set expected result,
+	 * the other properties are not copied
+	 */
+	LazyTestAssertionDto createLazyCopy(final String projectHash) {
+		final LazyTestAssertionDto copy = new LazyTestAssertionDto(expression.withProjectHash(projectHash),
+				expectedResult != null ? expectedResult.withProjectHash(projectHash) : null);
+		if (expectedResult == null) {
+			copy.setExpectedResult(super.getExpectedResult());
+		}
+		return copy;
+	}
+}
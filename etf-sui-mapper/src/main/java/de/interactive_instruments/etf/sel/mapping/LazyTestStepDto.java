@@ -0,0 +1,74 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import de.interactive_instruments.etf.dal.dto.test.TestStepDto;
+
+/**
+ * A Test Step whose statement is read from the project file on first access.
+ *
+ * The statement is loaded into the field of the Test Step once, so later accesses,
+ * {@link #createCopy()} and marshalling through the getters see the same value.
+ * If the statement can not be read, because the project file has been changed
+ * since mapping or can not be read, the getter throws an IllegalStateException
+ * and the statement is read again on the next access.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class LazyTestStepDto extends TestStepDto {
+
+	private final ProjectItemText statementForExecution;
+	private volatile boolean loaded;
+
+	LazyTestStepDto(final ProjectItemText statementForExecution) {
+		this.statementForExecution = statementForExecution;
+	}
+
+	@Override
+	public String getStatementForExecution() {
+		if (!loaded) {
+			synchronized (this) {
+				if (!loaded) {
+					super.setStatementForExecution(statementForExecution.get());
+					loaded = true;
+				}
+			}
+		}
+		return super.getStatementForExecution();
+	}
+
+	@Override
+	public void setStatementForExecution(final String statementForExecution) {
+		synchronized (this) {
+			super.setStatementForExecution(statementForExecution);
+			loaded = true;
+		}
+	}
+
+	@Override
+	public TestStepDto createCopy() {
+		getStatementForExecution();
+		return super.createCopy();
+	}
+
+	/**
+	 * @param projectHash hash of the project file the copy belongs to
+	 * @return a Test Step with the same reference, the other properties are not copied
+	 */
+	LazyTestStepDto createLazyCopy(final String projectHash) {
+		return new LazyTestStepDto(statementForExecution.withProjectHash(projectHash));
+	}
+}
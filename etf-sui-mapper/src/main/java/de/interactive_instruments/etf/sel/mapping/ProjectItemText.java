@@ -0,0 +1,232 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.interactive_instruments.UriUtils;
+
+/**
+ * Reference to the text of a configuration element of a Test Step or an
+ * assertion in a SoapUI project file.
+ *
+ * The texts of all items of a project file are read in one pass into an index,
+ * when the first text is accessed or the IDs are read during mapping. The index
+ * is shared by all references to the file and only softly referenced. It is not
+ * built if the hash of the project file differs from the hash at mapping time,
+ * as the items may have changed.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class ProjectItemText {
+
+	private static final XMLInputFactory xmlInputFactory;
+
+	// Local names of the configuration elements which are referenced
+	private static final Set<String> ELEMENT_NAMES = new HashSet<>(
+			Arrays.asList("script", "scriptText", "path", "content"));
+
+	// Index of each project file
+	private static final ConcurrentMap<File, IndexRef> indices = new ConcurrentHashMap<>();
+
+	static {
+		xmlInputFactory = XMLInputFactory.newInstance();
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final File projectFile;
+	private final String projectHash;
+	private final String itemId;
+	private final String elementName;
+
+	/**
+	 * Texts of the configuration elements of all Test Steps and assertions of a project file
+	 */
+	private static final class Index {
+		private final String projectHash;
+		// element texts keyed by item ID and element name
+		private final Map<String, Map<String, String>> texts = new HashMap<>();
+
+		private Index(final String projectHash) {
+			this.projectHash = projectHash;
+		}
+	}
+
+	/**
+	 * Soft reference to the index of a project file, which is rebuilt after it has been collected
+	 */
+	private static final class IndexRef {
+		// guarded by this
+		private SoftReference<Index> ref;
+
+		private synchronized Index get(final File projectFile, final String projectHash)
+				throws IOException, XMLStreamException {
+			Index index = ref != null ? ref.get() : null;
+			if (index == null || !index.projectHash.equals(projectHash)) {
+				checkUnchanged(projectFile, projectHash);
+				index = build(projectFile, projectHash);
+				// the file may have been changed while it was read
+				checkUnchanged(projectFile, projectHash);
+				ref = new SoftReference<>(index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * @param projectFile SoapUI project file
+	 * @param projectHash hash of the project file at mapping time
+	 * @param itemId SoapUI ID of the Test Step or assertion
+	 * @param elementName local name of the configuration element
+	 */
+	ProjectItemText(final File projectFile, final String projectHash, final String itemId,
+			final String elementName) {
+		if (!ELEMENT_NAMES.contains(elementName)) {
+			throw new IllegalArgumentException("Element " + elementName + " is not indexed");
+		}
+		this.projectFile = projectFile;
+		this.projectHash = projectHash;
+		this.itemId = itemId;
+		this.elementName = elementName;
+	}
+
+	/**
+	 * Returns a reference to the same item in a changed project file, in which the item
+	 * itself has not been changed
+	 *
+	 * @param projectHash hash of the changed project file
+	 * @return reference with the hash
+	 */
+	ProjectItemText withProjectHash(final String projectHash) {
+		if (Objects.equals(this.projectHash, projectHash)) {
+			return this;
+		}
+		return new ProjectItemText(projectFile, projectHash, itemId, elementName);
+	}
+
+	/**
+	 * @return the text or null if the item or element does not exist
+	 * @throws IllegalStateException if the project file can not be read or has been changed since mapping
+	 */
+	String get() {
+		final Index index;
+		try {
+			index = index(projectFile, projectHash);
+		} catch (final IOException | XMLStreamException e) {
+			throw new IllegalStateException("Could not read " + elementName + " of item " + itemId
+					+ " from project " + projectFile + ": " + e.getMessage(), e);
+		}
+		final Map<String, String> itemTexts = index.texts.get(itemId);
+		return itemTexts != null ? itemTexts.get(elementName) : null;
+	}
+
+	/**
+	 * Reads the IDs of all Test Steps and assertions which are persisted in the project file.
+	 *
+	 * SoapUI creates missing IDs when the items are loaded, only the persisted IDs can be
+	 * used to find the items in the file again. The texts of the items are indexed in the
+	 * same pass.
+	 *
+	 * @param projectFile SoapUI project file
+	 * @param projectHash hash of the project file at mapping time
+	 * @return IDs of the Test Steps and assertions
+	 * @throws IOException if the file can not be read or does not match the hash
+	 */
+	static Set<String> readIds(final File projectFile, final String projectHash)
+			throws IOException, XMLStreamException {
+		return Collections.unmodifiableSet(index(projectFile, projectHash).texts.keySet());
+	}
+
+	private static Index index(final File projectFile, final String projectHash)
+			throws IOException, XMLStreamException {
+		if (projectHash == null) {
+			throw new IOException("Hash of project " + projectFile + " unknown");
+		}
+		return indices.computeIfAbsent(projectFile.getAbsoluteFile(), f -> new IndexRef())
+				.get(projectFile, projectHash);
+	}
+
+	private static void checkUnchanged(final File projectFile, final String projectHash) throws IOException {
+		if (!projectHash.equals(UriUtils.hashFromTimestampOrContent(projectFile.toURI()))) {
+			throw new IOException("Project " + projectFile + " has been changed since mapping");
+		}
+	}
+
+	/**
+	 * Reads the texts of the configuration elements of all items. The first element with
+	 * a name within an item, including nested items, is used.
+	 */
+	private static Index build(final File projectFile, final String projectHash)
+			throws IOException, XMLStreamException {
+		final Index index = new Index(projectHash);
+		try (final InputStream in = new BufferedInputStream(new FileInputStream(projectFile))) {
+			final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+			try {
+				// texts and depths of the open items
+				final Deque<Map<String, String>> openItems = new ArrayDeque<>();
+				final Deque<Integer> openItemDepths = new ArrayDeque<>();
+				int depth = 0;
+				while (reader.hasNext()) {
+					final int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						final String id;
+						if (isItem(reader) && (id = reader.getAttributeValue(null, "id")) != null) {
+							openItems.push(index.texts.computeIfAbsent(id, i -> new HashMap<>(4)));
+							openItemDepths.push(depth);
+						} else if (!openItems.isEmpty() && ELEMENT_NAMES.contains(reader.getLocalName())) {
+							final String name = reader.getLocalName();
+							// moves to the end element
+							final String text = reader.getElementText();
+							depth--;
+							for (final Map<String, String> itemTexts : openItems) {
+								itemTexts.putIfAbsent(name, text);
+							}
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						if (!openItemDepths.isEmpty() && openItemDepths.peek() == depth) {
+							openItems.pop();
+							openItemDepths.pop();
+						}
+						depth--;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return index;
+	}
+
+	private static boolean isItem(final XMLStreamReader reader) {
+		final String name = reader.getLocalName();
+		return "testStep".equals(name) || "assertion".equals(name);
+	}
+}
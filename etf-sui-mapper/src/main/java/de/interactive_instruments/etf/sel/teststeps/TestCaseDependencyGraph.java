@@ -0,0 +1,298 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.teststeps;
+
+import java.util.*;
+
+import com.eviware.soapui.impl.wsdl.teststeps.WsdlRunTestCaseTestStep;
+import com.eviware.soapui.model.project.Project;
+import com.eviware.soapui.model.testsuite.TestCase;
+import com.eviware.soapui.model.testsuite.TestStep;
+import com.eviware.soapui.model.testsuite.TestSuite;
+
+import de.interactive_instruments.etf.sel.StronglyConnectedComponents;
+
+/**
+ * The dependencies between the Test Cases of a project.
+ *
+ * The Test Steps of each Test Case are scanned once for Run Test Case and
+ * Test Case Dependency steps. The graph is immutable and can be shared
+ * between threads. Test Cases are identified by their SoapUI IDs, targets
+ * outside of the project are ignored.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class TestCaseDependencyGraph {
+
+	// Test Cases in project order
+	private final List<TestCase> testCases;
+	private final Map<String, Integer> indices;
+	// indices of the direct dependencies and dependents, in Test Step order
+	private final int[][] dependencies;
+	private final int[][] dependents;
+	private final List<List<TestCase>> cycles;
+
+	private TestCaseDependencyGraph(final List<TestCase> testCases) {
+		this.testCases = Collections.unmodifiableList(testCases);
+		this.indices = new HashMap<>(testCases.size() * 2);
+		for (int i = 0; i < testCases.size(); i++) {
+			indices.put(testCases.get(i).getId(), i);
+		}
+		this.dependencies = new int[testCases.size()][];
+		final List<List<Integer>> dependentLists = new ArrayList<>(testCases.size());
+		for (int i = 0; i < testCases.size(); i++) {
+			dependentLists.add(new ArrayList<>(2));
+		}
+		for (int i = 0; i < testCases.size(); i++) {
+			final Set<Integer> targets = new LinkedHashSet<>();
+			final List<TestStep> testSteps = testCases.get(i).getTestStepList();
+			if (testSteps != null) {
+				for (final TestStep testStep : testSteps) {
+					final Integer target = indexOf(getTarget(testStep));
+					if (target != null) {
+						targets.add(target);
+					}
+				}
+			}
+			dependencies[i] = toArray(targets);
+			for (final int target : dependencies[i]) {
+				dependentLists.get(target).add(i);
+			}
+		}
+		this.dependents = new int[testCases.size()][];
+		for (int i = 0; i < testCases.size(); i++) {
+			dependents[i] = toArray(dependentLists.get(i));
+		}
+		this.cycles = Collections.unmodifiableList(findCycles());
+	}
+
+	/**
+	 * Builds the graph of all Test Cases of a project
+	 *
+	 * @param project SoapUI project
+	 * @return dependency graph
+	 */
+	public static TestCaseDependencyGraph build(final Project project) {
+		final List<TestCase> testCases = new ArrayList<>();
+		for (int tsi = 0; tsi < project.getTestSuiteCount(); tsi++) {
+			final TestSuite testSuite = project.getTestSuiteAt(tsi);
+			for (int tci = 0; tci < testSuite.getTestCaseCount(); tci++) {
+				testCases.add(testSuite.getTestCaseAt(tci));
+			}
+		}
+		return new TestCaseDependencyGraph(testCases);
+	}
+
+	/**
+	 * Builds the graph of the passed Test Cases
+	 *
+	 * @param testCases Test Cases, dependencies on other Test Cases are ignored
+	 * @return dependency graph
+	 */
+	public static TestCaseDependencyGraph build(final Collection<? extends TestCase> testCases) {
+		return new TestCaseDependencyGraph(new ArrayList<>(testCases));
+	}
+
+	private static TestCase getTarget(final TestStep testStep) {
+		if (testStep instanceof TestCaseDependencyTestStepDef) {
+			return ((TestCaseDependencyTestStepDef) testStep).getTargetTestCase();
+		} else if (testStep instanceof WsdlRunTestCaseTestStep) {
+			return ((WsdlRunTestCaseTestStep) testStep).getTargetTestCase();
+		}
+		return null;
+	}
+
+	private Integer indexOf(final TestCase testCase) {
+		return testCase != null ? indices.get(testCase.getId()) : null;
+	}
+
+	private int index(final TestCase testCase) {
+		final Integer index = indexOf(testCase);
+		if (index == null) {
+			throw new IllegalArgumentException("Test Case '" + (testCase != null ? testCase.getName() : null)
+					+ "' is not part of the dependency graph");
+		}
+		return index;
+	}
+
+	private static int[] toArray(final Collection<Integer> values) {
+		final int[] array = new int[values.size()];
+		int i = 0;
+		for (final Integer value : values) {
+			array[i++] = value;
+		}
+		return array;
+	}
+
+	private List<TestCase> toTestCases(final int[] indices) {
+		final List<TestCase> result = new ArrayList<>(indices.length);
+		for (final int index : indices) {
+			result.add(testCases.get(index));
+		}
+		return result;
+	}
+
+	private List<TestCase> toTestCases(final BitSet indices) {
+		final List<TestCase> result = new ArrayList<>(indices.cardinality());
+		for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+			result.add(testCases.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return all Test Cases in project order
+	 */
+	public List<TestCase> getTestCases() {
+		return testCases;
+	}
+
+	public boolean contains(final TestCase testCase) {
+		return indexOf(testCase) != null;
+	}
+
+	/**
+	 * @return the Test Case with the SoapUI ID or null
+	 */
+	public TestCase getTestCase(final String id) {
+		final Integer index = indices.get(id);
+		return index != null ? testCases.get(index) : null;
+	}
+
+	/**
+	 * @return the Test Cases the Test Case directly depends on, in Test Step order
+	 */
+	public List<TestCase> getDependencies(final TestCase testCase) {
+		return toTestCases(dependencies[index(testCase)]);
+	}
+
+	/**
+	 * @return the Test Cases which directly depend on the Test Case, in project order
+	 */
+	public List<TestCase> getDependents(final TestCase testCase) {
+		return toTestCases(dependents[index(testCase)]);
+	}
+
+	/**
+	 * @return all Test Cases the Test Case directly or indirectly depends on, in project order
+	 */
+	public List<TestCase> getTransitiveDependencies(final TestCase testCase) {
+		return toTestCases(reachable(index(testCase), dependencies));
+	}
+
+	/**
+	 * @return all Test Cases which directly or indirectly depend on the Test Case, in project order
+	 */
+	public List<TestCase> getTransitiveDependents(final TestCase testCase) {
+		return toTestCases(reachable(index(testCase), dependents));
+	}
+
+	/**
+	 * @return true if the Test Case directly or indirectly depends on the other Test Case
+	 */
+	public boolean dependsOn(final TestCase testCase, final TestCase other) {
+		return reachable(index(testCase), dependencies).get(index(other));
+	}
+
+	private static BitSet reachable(final int start, final int[][] edges) {
+		final BitSet visited = new BitSet(edges.length);
+		final Deque<Integer> stack = new ArrayDeque<>();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			for (final int next : edges[stack.pop()]) {
+				if (!visited.get(next)) {
+					visited.set(next);
+					stack.push(next);
+				}
+			}
+		}
+		return visited;
+	}
+
+	public boolean hasCycles() {
+		return !cycles.isEmpty();
+	}
+
+	/**
+	 * @return groups of Test Cases which depend on each other, including Test Cases which depend on themselves
+	 */
+	public List<List<TestCase>> getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Returns the Test Cases in an order in which every Test Case comes after
+	 * all Test Cases it depends on. Independent Test Cases keep the project order.
+	 *
+	 * @return Test Cases in execution order
+	 * @throws IllegalStateException if the graph contains cycles
+	 */
+	public List<TestCase> getExecutionOrder() {
+		if (hasCycles()) {
+			throw new IllegalStateException("The Test Cases contain cyclic dependencies: " + describeCycles());
+		}
+		final int[] remaining = new int[testCases.size()];
+		final PriorityQueue<Integer> ready = new PriorityQueue<>();
+		for (int i = 0; i < testCases.size(); i++) {
+			remaining[i] = dependencies[i].length;
+			if (remaining[i] == 0) {
+				ready.add(i);
+			}
+		}
+		final List<TestCase> order = new ArrayList<>(testCases.size());
+		while (!ready.isEmpty()) {
+			final int next = ready.poll();
+			order.add(testCases.get(next));
+			for (final int dependent : dependents[next]) {
+				if (--remaining[dependent] == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * @return the names of the Test Cases of each cycle
+	 */
+	public String describeCycles() {
+		final StringBuilder builder = new StringBuilder();
+		for (final List<TestCase> cycle : cycles) {
+			if (builder.length() > 0) {
+				builder.append("; ");
+			}
+			builder.append('[');
+			for (int i = 0; i < cycle.size(); i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				builder.append(cycle.get(i).getName());
+			}
+			builder.append(']');
+		}
+		return builder.toString();
+	}
+
+	private List<List<TestCase>> findCycles() {
+		final List<List<TestCase>> result = new ArrayList<>();
+		for (final BitSet component : StronglyConnectedComponents.find(dependencies)) {
+			if (StronglyConnectedComponents.isCycle(component, dependencies)) {
+				result.add(toTestCases(component));
+			}
+		}
+		return result;
+	}
+}
@@ -17,6 +17,16 @@ package de.interactive_instruments.etf.sel.assertions;
 
 import static de.interactive_instruments.etf.sel.assertions.OwsExceptionReportAssertionImpl.*;
 
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import com.eviware.soapui.config.TestAssertionConfig;
 import com.eviware.soapui.impl.wsdl.panels.assertions.AssertionCategoryMapping;
 import com.eviware.soapui.impl.wsdl.teststeps.WsdlMessageAssertion;
@@ -46,6 +56,18 @@ public class OwsExceptionReportAssertionImpl extends WsdlMessageAssertion
 	public static final String LABEL = "Fail if service returns OWS Exception Report";
 	public static final String DESCRIPTION = "Check for exceptions returned by an Open Web Service";
 
+	private static final Set<String> EXCEPTION_ROOT_ELEMENTS = new HashSet<>(
+			Arrays.asList("ServiceExceptionReport", "ExceptionReport", "Exception"));
+
+	private static final XMLInputFactory xmlInputFactory;
+
+	static {
+		xmlInputFactory = XMLInputFactory.newInstance();
+		// do not load external DTDs, only the root element is read
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
 	public OwsExceptionReportAssertionImpl(TestAssertionConfig assertionConfig, Assertable modelItem) {
 		super(assertionConfig, modelItem, false, true, false, false);
 	}
@@ -64,9 +86,19 @@ public class OwsExceptionReportAssertionImpl extends WsdlMessageAssertion
 			throw new AssertionException(new AssertionError("Unable to parse empty xml response"));
 		}
 
+		// Fast path: only the prolog and the root element are read to decide if the
+		// response is an exception report
+		try {
+			if (!isExceptionReport(response)) {
+				return "Response does not contain an exception report.";
+			}
+		} catch (XMLStreamException e) {
+			throw new AssertionException(new AssertionError("Unable to parse response as xml: " + e.toString()));
+		}
+
 		final XmlObject xml;
 		try {
-			xml = XmlObject.Factory.parse(messageExchange.getResponseContentAsXml());
+			xml = XmlObject.Factory.parse(response);
 		} catch (XmlException e) {
 			throw new AssertionException(new AssertionError("Unable to parse response as xml: " + e.toString()));
 		}
@@ -93,6 +125,23 @@ public class OwsExceptionReportAssertionImpl extends WsdlMessageAssertion
 		return "Response does not contain an exception report.";
 	}
 
+	/**
+	 * Checks the local name of the root element, see XPATH_EXPRESSION
+	 */
+	private static boolean isExceptionReport(final String response) throws XMLStreamException {
+		final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(response));
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					return EXCEPTION_ROOT_ELEMENTS.contains(reader.getLocalName());
+				}
+			}
+			return false;
+		} finally {
+			reader.close();
+		}
+	}
+
 	@Override
 	public boolean configure() {
 		UISupport.showInfoMessage("Adding Assertion that will fail if service returns an exception report",
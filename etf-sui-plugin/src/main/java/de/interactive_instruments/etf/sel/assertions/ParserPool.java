@@ -0,0 +1,125 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.assertions;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Thread confined parsers and schema factories.
+ *
+ * The JAXP factories are looked up only once and each thread reuses its own
+ * instances, as none of them is thread safe. Objects are reset before they are
+ * handed out, so handlers and properties of a previous use do not leak into
+ * the next one, and must be released after use, so the idle objects do not
+ * reference handlers of the plugin. Validator handlers are pooled per schema
+ * in the {@link SchemaCache}.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class ParserPool {
+
+	private static final SAXParserFactory saxParserFactory;
+
+	static {
+		saxParserFactory = SAXParserFactory.newInstance();
+		saxParserFactory.setNamespaceAware(true);
+	}
+
+	private static final ThreadLocal<SAXParser> saxParsers = new ThreadLocal<>();
+
+	private static final ThreadLocal<SchemaFactory> schemaFactories = ThreadLocal
+			.withInitial(() -> SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI));
+
+	private ParserPool() {}
+
+	/**
+	 * Returns the namespace aware XML reader of the current thread, reset to its initial configuration.
+	 *
+	 * @return XML reader
+	 * @throws ParserConfigurationException if the parser can not be created
+	 * @throws SAXException if the parser can not be created
+	 */
+	static XMLReader getXmlReader() throws ParserConfigurationException, SAXException {
+		SAXParser parser = saxParsers.get();
+		if (parser == null) {
+			synchronized (saxParserFactory) {
+				parser = saxParserFactory.newSAXParser();
+			}
+			saxParsers.set(parser);
+		} else {
+			parser.reset();
+		}
+		return parser.getXMLReader();
+	}
+
+	/**
+	 * Returns the XML Schema factory of the current thread without resource resolver and error handler.
+	 *
+	 * @return schema factory
+	 */
+	static SchemaFactory getSchemaFactory() {
+		final SchemaFactory schemaFactory = schemaFactories.get();
+		schemaFactory.setResourceResolver(null);
+		schemaFactory.setErrorHandler(null);
+		return schemaFactory;
+	}
+
+	/**
+	 * Removes the handlers of a use from an XML reader returned by {@link #getXmlReader()}
+	 *
+	 * @param reader XML reader
+	 * @param lexicalHandlerProperty name of the lexical handler property which has been set or null
+	 */
+	static void release(final XMLReader reader, final String lexicalHandlerProperty) {
+		reader.setContentHandler(null);
+		reader.setErrorHandler(null);
+		if (lexicalHandlerProperty != null) {
+			try {
+				reader.setProperty(lexicalHandlerProperty, null);
+			} catch (final SAXException ignore) {
+				// the parser is reset before the next use
+			}
+		}
+	}
+
+	/**
+	 * Removes the resource resolver and error handler from a schema factory returned by
+	 * {@link #getSchemaFactory()}
+	 *
+	 * @param schemaFactory schema factory
+	 */
+	static void release(final SchemaFactory schemaFactory) {
+		schemaFactory.setResourceResolver(null);
+		schemaFactory.setErrorHandler(null);
+	}
+
+	/**
+	 * Removes the parser and the schema factory of the current thread. Must be called by
+	 * threads which outlive the plugin, for instance on plugin shutdown, as the values are
+	 * only removed from a thread when it terminates.
+	 */
+	static void remove() {
+		saxParsers.remove();
+		schemaFactories.remove();
+	}
+}
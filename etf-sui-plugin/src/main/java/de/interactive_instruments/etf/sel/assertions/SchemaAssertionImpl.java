@@ -17,18 +17,27 @@ package de.interactive_instruments.etf.sel.assertions;
 
 import static de.interactive_instruments.etf.sel.assertions.SchemaAssertionImpl.*;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.ValidatorHandler;
 
 import com.eviware.soapui.config.TestAssertionConfig;
+import com.eviware.soapui.impl.support.AbstractHttpRequest;
 import com.eviware.soapui.impl.wsdl.panels.assertions.AssertionCategoryMapping;
+import com.eviware.soapui.impl.wsdl.support.PathUtils;
 import com.eviware.soapui.impl.wsdl.teststeps.WsdlMessageAssertion;
 import com.eviware.soapui.model.TestPropertyHolder;
 import com.eviware.soapui.model.iface.MessageExchange;
@@ -71,36 +80,34 @@ public class SchemaAssertionImpl extends WsdlMessageAssertion implements SchemaA
 	private static final String SCHEMA_LOCATION_FIELD = "Schema Location";
 	private static final String SCHEMA_LOCATION_REWRITE_FILE = System.getProperty("ets.sel.schemalocation.rewrite.file", null);
 
-	public class LRUCache<K, V> {
+	// Number of compiled schemas that are kept in memory
+	private static final int SCHEMA_CACHE_SIZE = Integer.getInteger("etf.sel.schema.cache.size", 32);
+	// Comma separated list of schema locations which are compiled on startup
+	private static final String SCHEMA_CACHE_PREWARM = System.getProperty("etf.sel.schema.cache.prewarm", null);
 
-		private static final float HASH_TABLE_LOAD_FACTOR = 0.75f;
+	// Directory of the persistent schema document cache, the cache is disabled if not set
+	private static final String SCHEMA_RESOURCE_CACHE_DIR = System.getProperty("etf.sel.schema.cache.dir", null);
+	// Never fetch schema documents, only use the persistent cache
+	private static final boolean SCHEMA_RESOURCE_CACHE_OFFLINE = Boolean.getBoolean("etf.sel.schema.cache.offline");
+	// Maximum age of a persistent cache entry in hours, before it is fetched again
+	private static final long SCHEMA_RESOURCE_CACHE_MAX_AGE = Long.getLong("etf.sel.schema.cache.maxAge", 168);
 
-		private LinkedHashMap<K, V> map;
-		private int cacheSize;
+	private static final SchemaCache schemaCache = new SchemaCache(SCHEMA_CACHE_SIZE);
 
-		public LRUCache(int cacheSize) {
-			this.cacheSize = cacheSize;
-			int hashTableCapacity = (int) Math.ceil(cacheSize / HASH_TABLE_LOAD_FACTOR) + 1;
-			map = new LinkedHashMap<K, V>(hashTableCapacity, HASH_TABLE_LOAD_FACTOR, true) {
-				private static final long serialVersionUID = 1;
+	private static final SchemaResourceCache schemaResourceCache = createSchemaResourceCache();
 
-				@Override
-				protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-					return size() > LRUCache.this.cacheSize;
+	static {
+		if (!SUtils.isNullOrEmpty(SCHEMA_CACHE_PREWARM)) {
+			final List<String> schemaLocations = new ArrayList<>();
+			for (final String schemaLocation : SCHEMA_CACHE_PREWARM.split(",")) {
+				if (!SUtils.isNullOrEmpty(schemaLocation.trim())) {
+					schemaLocations.add(schemaLocation.trim());
 				}
-			};
-		}
-
-		public synchronized V get(K key) {
-			return map.get(key);
-		}
-
-		public synchronized void put(K key, V value) {
-			map.put(key, value);
+			}
+			schemaCache.prewarm(schemaLocations, schemaLocation -> () -> newSchema(schemaLocation, false));
 		}
 	}
 
-	private static LRUCache<String, Schema> schemaCache = null;
 	private String pathToXSD;
 
 	private XFormDialog configurationDialog;
@@ -115,8 +122,6 @@ public class SchemaAssertionImpl extends WsdlMessageAssertion implements SchemaA
 
 	public SchemaAssertionImpl(TestAssertionConfig assertionConfig, Assertable modelItem) {
 		super(assertionConfig, modelItem, false, true, false, false);
-		if (schemaCache == null)
-			schemaCache = new LRUCache<>(10);
 		XmlObjectConfigurationReader reader = new XmlObjectConfigurationReader(getConfiguration());
 		pathToXSD = reader.readString(SCHEMA_LOCATION, "");
 	}
@@ -151,70 +156,59 @@ public class SchemaAssertionImpl extends WsdlMessageAssertion implements SchemaA
 			}
 		}
 
-		String schemaLocation = pathToXSD;
+		final String schemaLocation = SUtils.isNullOrEmpty(pathToXSD) ? "xsi:schemaLocation" : pathToXSD;
+		final boolean fromHints = pathToXSD.equals("xsi:schemaLocation");
+		final String[] validatedSchemaLocation = {schemaLocation};
+		// validator handler acquired from the schema cache entry, released after parsing
+		final SchemaCache.Entry[] schemaEntry = {null};
+		final ValidatorHandler[] validatorHandler = {null};
 		try {
-
-			if (SUtils.isNullOrEmpty(messageExchange.getResponseContentAsXml())) {
-				throw new IllegalArgumentException("Response is empty");
-			}
-
-			if (SUtils.isNullOrEmpty(pathToXSD)) {
-				schemaLocation = "xsi:schemaLocation";
-			}
-
-			boolean dtd = messageExchange.getResponseContentAsXml().length() > 9 &&
-					messageExchange.getResponseContentAsXml().substring(0, 9).equalsIgnoreCase("<!DOCTYPE");
-
-			// Get Schamelocation and namespace as identifier for the cache if present
-			if (schemaLocation.equals("xsi:schemaLocation")) {
-				try {
-					final XmlObject xml = XmlObject.Factory.parse(messageExchange.getResponseContentAsXml());
-					XmlObject[] schemaLocFragment = xml
-							.selectPath(
-									"declare namespace xsi="
-											+ "'http://www.w3.org/2001/XMLSchema-instance'"
-											+ " /*/@xsi:schemaLocation");
-					// Namespace + schemaLocation holen
-					if (schemaLocFragment != null && schemaLocFragment[0] != null &&
-							schemaLocFragment[0].getDomNode() != null
-							&& !SUtils.isNullOrEmpty(schemaLocFragment[0].getDomNode().getNodeValue())) {
-						schemaLocation = schemaLocFragment[0].getDomNode().getNodeValue().trim();
-					} else {
-						throw new IllegalArgumentException("Missing xsi:schemaLocation attribute in the response");
+			final InputSource response = openResponse(messageExchange);
+			final errHandler errorHandler = new errHandler();
+
+			// Sniff the schema location from the root element and validate in the same pass
+			final StreamingValidationHandler handler = new StreamingValidationHandler(xsiSchemaLocation -> {
+				final String location;
+				if (schemaLocation.equals("xsi:schemaLocation")) {
+					if (SUtils.isNullOrEmpty(xsiSchemaLocation)) {
+						throw new IllegalArgumentException("Missing xsi:schemaLocation attribute in response");
 					}
-				} catch (Exception e) {
-					throw new IllegalArgumentException("Missing xsi:schemaLocation attribute in response");
-				}
-			}
-
-			// Lookup schema location in cache
-			Schema schema = schemaCache.get(schemaLocation);
-			if (schema == null) {
-				SchemaFactory sf = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
-				if (pathToXSD.equals("xsi:schemaLocation")) {
-					schema = sf.newSchema();
+					location = xsiSchemaLocation.trim();
 				} else {
-					schema = sf.newSchema(new URL(schemaLocation));
+					location = schemaLocation;
+				}
+				validatedSchemaLocation[0] = location;
+				// Lookup schema location in cache
+				schemaEntry[0] = schemaCache.getEntry(location, () -> newSchema(location, fromHints));
+				final ValidatorHandler vh = schemaEntry[0].acquireValidatorHandler();
+				validatorHandler[0] = vh;
+				vh.setErrorHandler(errorHandler);
+				if (fromHints && schemaResourceCache != null) {
+					vh.setResourceResolver(schemaResourceCache);
+				}
+				return vh;
+			});
+
+			final XMLReader reader = ParserPool.getXmlReader();
+			reader.setContentHandler(handler);
+			reader.setProperty(StreamingValidationHandler.LEXICAL_HANDLER_PROPERTY, handler);
+			reader.setErrorHandler(errorHandler);
+			try {
+				reader.parse(response);
+			} finally {
+				ParserPool.release(reader, StreamingValidationHandler.LEXICAL_HANDLER_PROPERTY);
+				if (validatorHandler[0] != null) {
+					schemaEntry[0].release(validatorHandler[0]);
+				}
+				if (response.getByteStream() != null) {
+					response.getByteStream().close();
 				}
-				schemaCache.put(schemaLocation, schema);
-			}
-
-			// LOG.info("Validating: "+schemaLocation);
-
-			final SAXParserFactory spf = SAXParserFactory.newInstance();
-			spf.setNamespaceAware(true);
-			final XMLReader reader = spf.newSAXParser().getXMLReader();
-			if (!dtd) {
-				final ValidatorHandler vh = schema.newValidatorHandler();
-				vh.setErrorHandler(new errHandler());
-				reader.setContentHandler(vh);
-			} else {
-				reader.setErrorHandler(new errHandler());
 			}
-			reader.parse(new InputSource(new StringReader(messageExchange.getResponseContentAsXml())));
+		} catch (StreamingValidationHandler.ValidatorCreationException e) {
+			throw new AssertionException(new AssertionError("Could not validate response: " + e.getException().getMessage()));
 		} catch (SAXException e) {
 			throw new AssertionException(new AssertionError(e.toString() + " Response did not validate against schema \'"
-					+ schemaLocation + "\'."));
+					+ validatedSchemaLocation[0] + "\'."));
 		} catch (Exception e) {
 			throw new AssertionException(new AssertionError("Could not validate response: " + e.getMessage()));
 		}
@@ -222,6 +216,85 @@ public class SchemaAssertionImpl extends WsdlMessageAssertion implements SchemaA
 		return "Response meets schema.";
 	}
 
+	/**
+	 * Opens the response dump file, if SoapUI has written one, so that large responses are
+	 * streamed from disk. Otherwise the response content is read from memory.
+	 */
+	private static InputSource openResponse(final MessageExchange messageExchange) throws IOException {
+		if (messageExchange.getModelItem() instanceof AbstractHttpRequest) {
+			final AbstractHttpRequest<?> httpRequest = (AbstractHttpRequest<?>) messageExchange.getModelItem();
+			if (!SUtils.isNullOrEmpty(httpRequest.getDumpFile())) {
+				final File dumpFile = new File(PathUtils.resolveResourcePath(httpRequest.getDumpFile(), httpRequest));
+				if (dumpFile.length() > 0) {
+					final InputSource inputSource = new InputSource(
+							new BufferedInputStream(new FileInputStream(dumpFile)));
+					inputSource.setSystemId(dumpFile.toURI().toString());
+					return inputSource;
+				}
+			}
+		}
+		final String responseContent = messageExchange.getResponseContentAsXml();
+		if (SUtils.isNullOrEmpty(responseContent)) {
+			throw new IllegalArgumentException("Response is empty");
+		}
+		return new InputSource(new StringReader(responseContent));
+	}
+
+	private static SchemaResourceCache createSchemaResourceCache() {
+		if (SUtils.isNullOrEmpty(SCHEMA_RESOURCE_CACHE_DIR)) {
+			return null;
+		}
+		try {
+			return new SchemaResourceCache(new File(SCHEMA_RESOURCE_CACHE_DIR), SCHEMA_RESOURCE_CACHE_OFFLINE,
+					TimeUnit.HOURS.toMillis(SCHEMA_RESOURCE_CACHE_MAX_AGE));
+		} catch (final IOException e) {
+			Utils.logError(e, "Could not create schema cache in '" + SCHEMA_RESOURCE_CACHE_DIR + "'");
+			return null;
+		}
+	}
+
+	private static Schema newSchema(final String schemaLocation, final boolean fromHints)
+			throws SAXException, IOException {
+		final SchemaFactory sf = ParserPool.getSchemaFactory();
+		try {
+			if (schemaResourceCache != null) {
+				sf.setResourceResolver(schemaResourceCache);
+			}
+			if (fromHints) {
+				return sf.newSchema();
+			}
+			final SchemaResourceCache.Document cachedSchema = schemaResourceCache != null
+					? schemaResourceCache.get(schemaLocation)
+					: null;
+			if (cachedSchema != null) {
+				try (final InputStream in = Files.newInputStream(cachedSchema.getPath())) {
+					return sf.newSchema(new StreamSource(in, cachedSchema.getSystemId()));
+				}
+			}
+			return sf.newSchema(new URL(schemaLocation));
+		} finally {
+			ParserPool.release(sf);
+		}
+	}
+
+	/**
+	 * Cache of compiled schemas, shared by all Schema Assertions
+	 *
+	 * @return schema cache
+	 */
+	public static SchemaCache getSchemaCache() {
+		return schemaCache;
+	}
+
+	/**
+	 * Persistent cache of schema documents, shared by all Schema Assertions
+	 *
+	 * @return schema document cache or null if it is not configured
+	 */
+	public static SchemaResourceCache getSchemaResourceCache() {
+		return schemaResourceCache;
+	}
+
 	@Override
 	public boolean configure() {
 		if (configurationDialog == null)
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.assertions;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * A thread safe LRU cache for compiled schemas.
+ *
+ * A schema is compiled only once, even if several threads request the same
+ * schema location at the same time: the first thread compiles the schema
+ * and all other threads wait for the result. Schemas that failed to compile
+ * are not cached.
+ *
+ * Each entry also pools the idle validator handlers of its schema, so they are
+ * evicted together with the schema.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class SchemaCache {
+
+	private static final float HASH_TABLE_LOAD_FACTOR = 0.75f;
+
+	// Number of idle validator handlers that are kept per schema
+	private static final int VALIDATOR_HANDLERS_PER_SCHEMA = Integer.getInteger("etf.sel.validator.pool.size", 8);
+
+	private final int capacity;
+	// guarded by itself
+	private final LinkedHashMap<String, Future<Entry>> schemas;
+
+	/**
+	 * A compiled schema and its idle validator handlers
+	 */
+	static final class Entry {
+		private final Schema schema;
+		private final Queue<ValidatorHandler> validatorHandlers = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger idle = new AtomicInteger();
+
+		private Entry(final Schema schema) {
+			this.schema = schema;
+		}
+
+		Schema getSchema() {
+			return schema;
+		}
+
+		/**
+		 * Returns an idle validator handler or a new one, without content handler, resource
+		 * resolver and error handler. The validator handler is reset by the next startDocument
+		 * event and must be passed to {@link #release(ValidatorHandler)} after use.
+		 *
+		 * @return validator handler for the schema
+		 */
+		ValidatorHandler acquireValidatorHandler() {
+			final ValidatorHandler validatorHandler = validatorHandlers.poll();
+			if (validatorHandler == null) {
+				return schema.newValidatorHandler();
+			}
+			idle.decrementAndGet();
+			return validatorHandler;
+		}
+
+		/**
+		 * Returns a validator handler to the pool
+		 *
+		 * @param validatorHandler validator handler from {@link #acquireValidatorHandler()}
+		 */
+		void release(final ValidatorHandler validatorHandler) {
+			validatorHandler.setContentHandler(null);
+			validatorHandler.setResourceResolver(null);
+			validatorHandler.setErrorHandler(null);
+			if (idle.incrementAndGet() <= VALIDATOR_HANDLERS_PER_SCHEMA) {
+				validatorHandlers.offer(validatorHandler);
+			} else {
+				idle.decrementAndGet();
+			}
+		}
+	}
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong loadTimeNanos = new AtomicLong();
+
+	public SchemaCache(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be greater than 0");
+		}
+		this.capacity = capacity;
+		final int hashTableCapacity = (int) Math.ceil(capacity / HASH_TABLE_LOAD_FACTOR) + 1;
+		this.schemas = new LinkedHashMap<String, Future<Entry>>(hashTableCapacity, HASH_TABLE_LOAD_FACTOR, true) {
+			private static final long serialVersionUID = 1;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Future<Entry>> eldest) {
+				return size() > SchemaCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached schema or compiles it with the loader.
+	 *
+	 * @param schemaLocation schema location used as key
+	 * @param loader compiles the schema, if it is not cached
+	 * @return compiled schema
+	 * @throws Exception the exception thrown by the loader
+	 */
+	public Schema get(final String schemaLocation, final Callable<Schema> loader) throws Exception {
+		return getEntry(schemaLocation, loader).getSchema();
+	}
+
+	/**
+	 * Returns the cached entry or compiles the schema with the loader.
+	 *
+	 * @param schemaLocation schema location used as key
+	 * @param loader compiles the schema, if it is not cached
+	 * @return entry with the compiled schema
+	 * @throws Exception the exception thrown by the loader
+	 */
+	Entry getEntry(final String schemaLocation, final Callable<Schema> loader) throws Exception {
+		final Future<Entry> future;
+		FutureTask<Entry> task = null;
+		synchronized (schemas) {
+			final Future<Entry> cached = schemas.get(schemaLocation);
+			if (cached != null) {
+				future = cached;
+			} else {
+				task = new FutureTask<>(() -> new Entry(loader.call()));
+				schemas.put(schemaLocation, task);
+				future = task;
+			}
+		}
+		if (task != null) {
+			misses.incrementAndGet();
+			final long start = System.nanoTime();
+			task.run();
+			loadTimeNanos.addAndGet(System.nanoTime() - start);
+		} else {
+			hits.incrementAndGet();
+		}
+		try {
+			return future.get();
+		} catch (final ExecutionException e) {
+			synchronized (schemas) {
+				schemas.remove(schemaLocation, future);
+			}
+			if (task != null) {
+				failures.incrementAndGet();
+			}
+			final Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Compiles schemas in a background thread, so they are available when
+	 * the first test is run.
+	 *
+	 * @param schemaLocations schema locations to compile
+	 * @param loaderFactory creates a loader for a schema location
+	 */
+	public void prewarm(final Collection<String> schemaLocations, final Function<String, Callable<Schema>> loaderFactory) {
+		final Thread thread = new Thread(() -> {
+			for (final String schemaLocation : schemaLocations) {
+				try {
+					get(schemaLocation, loaderFactory.apply(schemaLocation));
+				} catch (final Exception e) {
+					Utils.logError(e, "Could not prewarm schema cache with '" + schemaLocation + "'");
+				}
+			}
+			Utils.log("Schema cache prewarmed: " + this);
+		}, "etf-sel-schema-cache-prewarm");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int size() {
+		synchronized (schemas) {
+			return schemas.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Total time spent compiling schemas
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getLoadTime() {
+		return TimeUnit.NANOSECONDS.toMillis(loadTimeNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return "SchemaCache{" +
+				"size=" + size() +
+				", capacity=" + capacity +
+				", hits=" + hits +
+				", misses=" + misses +
+				", failures=" + failures +
+				", loadTime=" + getLoadTime() + "ms" +
+				'}';
+	}
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.assertions;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * A persistent cache for schema documents that are fetched over HTTP(S).
+ *
+ * Documents are stored content-addressed: the file name of a document is the
+ * SHA-256 hash of its content, so a document that is published under several
+ * locations is only stored once. A second index maps the hash of each location
+ * to the hash of its content and to the URL the document has been fetched from,
+ * after following redirects. This URL is the system id of the document, so that
+ * relative imports and includes are resolved against it.
+ *
+ * The cache is used as {@link LSResourceResolver} for imported and included
+ * schemas. Entries older than the maximum age are fetched again, but if the
+ * server can not be reached the outdated entry is used and it is not fetched
+ * again before the maximum age has passed once more. In offline mode
+ * documents are never fetched and missing documents cause an error.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class SchemaResourceCache implements LSResourceResolver {
+
+	private static final int MAX_REDIRECTS = 5;
+	private static final int TIMEOUT = (int) TimeUnit.SECONDS.toMillis(60);
+
+	private final Path locationsDir;
+	private final Path documentsDir;
+	private final boolean offline;
+	private final long maxAge;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong fetches = new AtomicLong();
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param cacheDir directory of the cache, created if it does not exist
+	 * @param offline never fetch documents
+	 * @param maxAge maximum age of an entry in milliseconds, before it is fetched again
+	 * @throws IOException if the cache directory is not writable
+	 */
+	public SchemaResourceCache(final File cacheDir, final boolean offline, final long maxAge) throws IOException {
+		this.locationsDir = Files.createDirectories(cacheDir.toPath().resolve("locations"));
+		this.documentsDir = Files.createDirectories(cacheDir.toPath().resolve("documents"));
+		this.offline = offline;
+		this.maxAge = maxAge;
+	}
+
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * A cached schema document
+	 */
+	public static final class Document {
+		private final Path path;
+		private final String systemId;
+
+		private Document(final Path path, final String systemId) {
+			this.path = path;
+			this.systemId = systemId;
+		}
+
+		/**
+		 * @return path to the cached document
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * @return the URL the document has been fetched from, after following redirects
+		 */
+		public String getSystemId() {
+			return systemId;
+		}
+	}
+
+	/**
+	 * Returns the cached document for a location. The document is fetched if it
+	 * is not cached or outdated.
+	 *
+	 * @param location absolute location of the document
+	 * @return the cached document or null if the location is not a HTTP(S) URL
+	 * @throws IOException if the document is not cached and could not be fetched
+	 */
+	public Document get(final String location) throws IOException {
+		if (!isCacheable(location)) {
+			return null;
+		}
+		final Path locationEntry = locationsDir.resolve(Utils.sha256(location.getBytes(StandardCharsets.UTF_8)));
+		final Document cachedDocument = getCachedDocument(locationEntry, location);
+		if (cachedDocument != null) {
+			if (offline || System.currentTimeMillis() - Files.getLastModifiedTime(locationEntry).toMillis() < maxAge) {
+				hits.incrementAndGet();
+				return cachedDocument;
+			}
+		} else if (offline) {
+			throw new IOException("Schema document '" + location + "' is not cached and the cache is in offline mode");
+		}
+
+		final Fetched fetched;
+		try {
+			fetched = fetch(location);
+		} catch (final IOException e) {
+			if (cachedDocument != null) {
+				Utils.warn("Could not fetch schema document '" + location + "', using cached document: " + e.getMessage());
+				// do not try again for every single schema validation until the maximum age has passed again
+				touch(locationEntry);
+				hits.incrementAndGet();
+				return cachedDocument;
+			}
+			throw e;
+		}
+		fetches.incrementAndGet();
+		final String contentHash = Utils.sha256(fetched.content);
+		final Path document = documentsDir.resolve(contentHash);
+		if (!Files.exists(document)) {
+			writeAtomically(document, fetched.content);
+		}
+		writeAtomically(locationEntry, (contentHash + '\n' + fetched.url).getBytes(StandardCharsets.UTF_8));
+		return new Document(document, fetched.url);
+	}
+
+	@Override
+	public LSInput resolveResource(final String type, final String namespaceURI, final String publicId,
+			final String systemId, final String baseURI) {
+		if (systemId == null) {
+			return null;
+		}
+		final String location;
+		try {
+			location = baseURI != null ? new URI(baseURI).resolve(new URI(systemId)).toString() : systemId;
+		} catch (final URISyntaxException e) {
+			return null;
+		}
+		try {
+			final Document document = get(location);
+			if (document != null) {
+				return new CachedInput(publicId, document.getSystemId(), baseURI, document.getPath());
+			}
+		} catch (final IOException e) {
+			if (offline) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			Utils.logError(e, "Could not cache schema document '" + location + "'");
+		}
+		return null;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getFetches() {
+		return fetches.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SchemaResourceCache{" +
+				"dir=" + documentsDir.getParent() +
+				", offline=" + offline +
+				", hits=" + hits +
+				", fetches=" + fetches +
+				'}';
+	}
+
+	private static boolean isCacheable(final String location) {
+		return location.startsWith("http://") || location.startsWith("https://");
+	}
+
+	private static void touch(final Path locationEntry) {
+		try {
+			Files.setLastModifiedTime(locationEntry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (final IOException e) {
+			Utils.logError(e, "Could not update the cache entry '" + locationEntry + "'");
+		}
+	}
+
+	/**
+	 * Reads a location entry, which contains the hash of the content in the first line and
+	 * the URL the document has been fetched from in the second line
+	 */
+	private Document getCachedDocument(final Path locationEntry, final String location) throws IOException {
+		if (!Files.exists(locationEntry)) {
+			return null;
+		}
+		final String[] entry = new String(Files.readAllBytes(locationEntry), StandardCharsets.UTF_8).trim().split("\n", 2);
+		final String contentHash = entry[0].trim();
+		final Path document = documentsDir.resolve(contentHash);
+		if (contentHash.isEmpty() || !Files.exists(document)) {
+			return null;
+		}
+		// entries written before the URL has been recorded
+		return new Document(document, entry.length > 1 ? entry[1].trim() : location);
+	}
+
+	private static final class Fetched {
+		private final byte[] content;
+		private final String url;
+
+		private Fetched(final byte[] content, final String url) {
+			this.content = content;
+			this.url = url;
+		}
+	}
+
+	private static Fetched fetch(final String location) throws IOException {
+		URL url = new URL(location);
+		for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+			final URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(TIMEOUT);
+			connection.setReadTimeout(TIMEOUT);
+			if (connection instanceof HttpURLConnection) {
+				final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+				// redirects from http to https are not followed by the HttpURLConnection
+				httpConnection.setInstanceFollowRedirects(false);
+				final int responseCode = httpConnection.getResponseCode();
+				if (responseCode >= 300 && responseCode < 400 && httpConnection.getHeaderField("Location") != null) {
+					url = new URL(url, httpConnection.getHeaderField("Location"));
+					httpConnection.disconnect();
+					continue;
+				} else if (responseCode != HttpURLConnection.HTTP_OK) {
+					httpConnection.disconnect();
+					throw new IOException("Server returned HTTP status code " + responseCode + " for '" + url + "'");
+				}
+			}
+			try (final InputStream in = connection.getInputStream()) {
+				return new Fetched(IOUtils.toByteArray(in), url.toString());
+			}
+		}
+		throw new IOException("Too many redirects for '" + location + "'");
+	}
+
+	private static void writeAtomically(final Path target, final byte[] content) throws IOException {
+		final Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tmp, content);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static final class CachedInput implements LSInput {
+
+		private String publicId;
+		private String systemId;
+		private String baseURI;
+		private InputStream byteStream;
+
+		private CachedInput(final String publicId, final String systemId, final String baseURI, final Path document)
+				throws IOException {
+			this.publicId = publicId;
+			this.systemId = systemId;
+			this.baseURI = baseURI;
+			this.byteStream = new BufferedInputStream(Files.newInputStream(document));
+		}
+
+		@Override
+		public Reader getCharacterStream() {
+			return null;
+		}
+
+		@Override
+		public void setCharacterStream(final Reader characterStream) {}
+
+		@Override
+		public InputStream getByteStream() {
+			return byteStream;
+		}
+
+		@Override
+		public void setByteStream(final InputStream byteStream) {
+			this.byteStream = byteStream;
+		}
+
+		@Override
+		public String getStringData() {
+			return null;
+		}
+
+		@Override
+		public void setStringData(final String stringData) {}
+
+		@Override
+		public String getSystemId() {
+			return systemId;
+		}
+
+		@Override
+		public void setSystemId(final String systemId) {
+			this.systemId = systemId;
+		}
+
+		@Override
+		public String getPublicId() {
+			return publicId;
+		}
+
+		@Override
+		public void setPublicId(final String publicId) {
+			this.publicId = publicId;
+		}
+
+		@Override
+		public String getBaseURI() {
+			return baseURI;
+		}
+
+		@Override
+		public void setBaseURI(final String baseURI) {
+			this.baseURI = baseURI;
+		}
+
+		@Override
+		public String getEncoding() {
+			return null;
+		}
+
+		@Override
+		public void setEncoding(final String encoding) {}
+
+		@Override
+		public boolean getCertifiedText() {
+			return false;
+		}
+
+		@Override
+		public void setCertifiedText(final boolean certifiedText) {}
+	}
+}
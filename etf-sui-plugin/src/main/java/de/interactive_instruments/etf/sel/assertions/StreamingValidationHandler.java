@@ -0,0 +1,203 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Validates a document in a single SAX pass.
+ *
+ * The handler sniffs the xsi:schemaLocation attribute of the root element,
+ * creates the validator for it and forwards all following events to the
+ * validator. Events before the root element are buffered where the
+ * validator needs them. Documents with a document type declaration are only
+ * checked for well-formedness.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class StreamingValidationHandler extends DefaultHandler implements LexicalHandler {
+
+	static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+	/**
+	 * Creates the validator for a document
+	 */
+	@FunctionalInterface
+	interface ValidatorFactory {
+
+		/**
+		 * Creates a validator
+		 *
+		 * @param xsiSchemaLocation value of the xsi:schemaLocation attribute of the root element or null
+		 * @return validator which is used for the document
+		 * @throws Exception if no validator can be created
+		 */
+		ContentHandler newValidator(final String xsiSchemaLocation) throws Exception;
+	}
+
+	/**
+	 * Thrown if the validator could not be created. The cause is not a validation error.
+	 */
+	static final class ValidatorCreationException extends SAXException {
+		private static final long serialVersionUID = 1;
+
+		private ValidatorCreationException(final Exception cause) {
+			super(cause);
+		}
+	}
+
+	private final ValidatorFactory validatorFactory;
+	private final List<String> prefixMappings = new ArrayList<>();
+	private Locator locator;
+	private boolean dtd;
+	private boolean rootElementRead;
+	private ContentHandler validator;
+
+	StreamingValidationHandler(final ValidatorFactory validatorFactory) {
+		this.validatorFactory = validatorFactory;
+	}
+
+	@Override
+	public void setDocumentLocator(final Locator locator) {
+		this.locator = locator;
+	}
+
+	@Override
+	public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
+		if (validator != null) {
+			validator.startPrefixMapping(prefix, uri);
+		} else if (!rootElementRead) {
+			prefixMappings.add(prefix);
+			prefixMappings.add(uri);
+		}
+	}
+
+	@Override
+	public void endPrefixMapping(final String prefix) throws SAXException {
+		if (validator != null) {
+			validator.endPrefixMapping(prefix);
+		}
+	}
+
+	@Override
+	public void startElement(final String uri, final String localName, final String qName, final Attributes atts)
+			throws SAXException {
+		if (!rootElementRead) {
+			rootElementRead = true;
+			if (!dtd) {
+				validator = newValidator(atts.getValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation"));
+			}
+		}
+		if (validator != null) {
+			validator.startElement(uri, localName, qName, atts);
+		}
+	}
+
+	@Override
+	public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+		if (validator != null) {
+			validator.endElement(uri, localName, qName);
+		}
+	}
+
+	@Override
+	public void characters(final char[] ch, final int start, final int length) throws SAXException {
+		if (validator != null) {
+			validator.characters(ch, start, length);
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+		if (validator != null) {
+			validator.ignorableWhitespace(ch, start, length);
+		}
+	}
+
+	@Override
+	public void processingInstruction(final String target, final String data) throws SAXException {
+		if (validator != null) {
+			validator.processingInstruction(target, data);
+		}
+	}
+
+	@Override
+	public void skippedEntity(final String name) throws SAXException {
+		if (validator != null) {
+			validator.skippedEntity(name);
+		}
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		if (validator != null) {
+			validator.endDocument();
+		}
+	}
+
+	@Override
+	public void startDTD(final String name, final String publicId, final String systemId) {
+		dtd = true;
+	}
+
+	@Override
+	public void endDTD() {}
+
+	@Override
+	public void startEntity(final String name) {}
+
+	@Override
+	public void endEntity(final String name) {}
+
+	@Override
+	public void startCDATA() {}
+
+	@Override
+	public void endCDATA() {}
+
+	@Override
+	public void comment(final char[] ch, final int start, final int length) {}
+
+	private ContentHandler newValidator(final String xsiSchemaLocation) throws SAXException {
+		final ContentHandler newValidator;
+		try {
+			newValidator = validatorFactory.newValidator(xsiSchemaLocation);
+		} catch (final SAXException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new ValidatorCreationException(e);
+		}
+		if (locator != null) {
+			newValidator.setDocumentLocator(locator);
+		}
+		newValidator.startDocument();
+		for (int i = 0; i < prefixMappings.size(); i += 2) {
+			newValidator.startPrefixMapping(prefixMappings.get(i), prefixMappings.get(i + 1));
+		}
+		prefixMappings.clear();
+		return newValidator;
+	}
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.FileUtils;
+
+import de.interactive_instruments.CLUtils;
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * Tracks the generations of the class loaders which are replaced on reloads.
+ *
+ * Every class loader gets a generation ID when it is created. When it is
+ * replaced, it is retired and only weakly referenced, so it can be garbage
+ * collected. Retired class loaders which are still reachable are reported,
+ * together with the number of classes they have loaded, as they pin their
+ * classes in the Metaspace.
+ *
+ * A retired class loader is not closed, as test runs which still use classes
+ * of it may load further classes or resources. The file it has been created
+ * with is deleted after the class loader has been garbage collected, or on
+ * {@link #shutdown()}.
+ *
+ * The registry is available as MXBean
+ * {@code de.interactive_instruments.etf.sel:type=ClassLoaderGenerations}.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class ClassLoaderGenerations implements ClassLoaderGenerationsMXBean {
+
+	public static final String OBJECT_NAME = "de.interactive_instruments.etf.sel:type=ClassLoaderGenerations";
+
+	private static final ClassLoaderGenerations instance = new ClassLoaderGenerations();
+
+	private static final class Generation extends WeakReference<ClassLoader> {
+		private final long id;
+		private final String owner;
+		private final long created;
+		private volatile long retired;
+		// file which is deleted when the class loader has been collected
+		private volatile File file;
+
+		private Generation(final ClassLoader classLoader, final ReferenceQueue<ClassLoader> queue, final long id,
+				final String owner) {
+			super(classLoader, queue);
+			this.id = id;
+			this.owner = owner;
+			this.created = System.currentTimeMillis();
+		}
+
+		private String describe() {
+			final ClassLoader classLoader = get();
+			final StringBuilder builder = new StringBuilder();
+			builder.append('#').append(id).append(' ').append(owner)
+					.append(" created=").append(new Date(created));
+			if (retired != 0) {
+				builder.append(" retired=").append(new Date(retired));
+			}
+			if (classLoader != null) {
+				builder.append(" loadedClasses=").append(loadedClassCount(classLoader));
+			} else {
+				builder.append(" collected");
+			}
+			return builder.toString();
+		}
+	}
+
+	private final AtomicLong ids = new AtomicLong();
+	private final AtomicLong collected = new AtomicLong();
+	private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+	// guarded by itself
+	private final Map<Long, Generation> generations = new LinkedHashMap<>();
+	// files of collected class loaders which could not be deleted yet, guarded by generations
+	private final List<File> undeletedFiles = new ArrayList<>();
+
+	static {
+		try {
+			final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!mBeanServer.isRegistered(name)) {
+				mBeanServer.registerMBean(instance, name);
+			}
+		} catch (final JMException | SecurityException e) {
+			Utils.logError(e, "Could not register " + OBJECT_NAME);
+		}
+	}
+
+	private ClassLoaderGenerations() {}
+
+	public static ClassLoaderGenerations getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Assigns a generation ID to a new class loader
+	 *
+	 * @param classLoader new class loader
+	 * @param owner description of the reloadable class loader which uses it
+	 * @return generation ID
+	 */
+	long register(final ClassLoader classLoader, final String owner) {
+		expunge();
+		final long id = ids.incrementAndGet();
+		synchronized (generations) {
+			generations.put(id, new Generation(classLoader, queue, id, owner));
+		}
+		return id;
+	}
+
+	/**
+	 * Marks a class loader as replaced, it is expected to be garbage collected
+	 *
+	 * @param id generation ID of the class loader
+	 */
+	void retire(final long id) {
+		retire(id, null);
+	}
+
+	/**
+	 * Marks a class loader as replaced, it is expected to be garbage collected.
+	 * The class loader remains open until it has been collected or until
+	 * {@link #shutdown()} is called.
+	 *
+	 * @param id generation ID of the class loader
+	 * @param file file the class loader has been created with, which is deleted
+	 * after the class loader has been collected, or null
+	 */
+	void retire(final long id, final File file) {
+		expunge();
+		final int retained;
+		synchronized (generations) {
+			final Generation generation = generations.get(id);
+			if (generation == null) {
+				if (file != null) {
+					undeletedFiles.add(file);
+				}
+				return;
+			}
+			generation.file = file;
+			generation.retired = System.currentTimeMillis();
+			retained = countRetained();
+		}
+		if (retained > 1) {
+			Utils.log("Class loader generation #" + id + " retired, " + retained
+					+ " retired class loader generations are still reachable");
+		}
+	}
+
+	@Override
+	public long getCreatedGenerationCount() {
+		return ids.get();
+	}
+
+	@Override
+	public long getCollectedGenerationCount() {
+		expunge();
+		return collected.get();
+	}
+
+	@Override
+	public int getRetainedGenerationCount() {
+		expunge();
+		synchronized (generations) {
+			return countRetained();
+		}
+	}
+
+	@Override
+	public String[] getActiveGenerations() {
+		return describe(false);
+	}
+
+	@Override
+	public String[] getRetainedGenerations() {
+		return describe(true);
+	}
+
+	private String[] describe(final boolean retired) {
+		expunge();
+		final List<String> descriptions = new ArrayList<>();
+		synchronized (generations) {
+			for (final Generation generation : generations.values()) {
+				if ((generation.retired != 0) == retired) {
+					descriptions.add(generation.describe());
+				}
+			}
+		}
+		return descriptions.toArray(new String[0]);
+	}
+
+	private int countRetained() {
+		int retained = 0;
+		for (final Generation generation : generations.values()) {
+			if (generation.retired != 0) {
+				retained++;
+			}
+		}
+		return retained;
+	}
+
+	/**
+	 * Removes the garbage collected class loaders and deletes their files
+	 */
+	private void expunge() {
+		for (Generation generation = (Generation) queue.poll(); generation != null; generation = (Generation) queue
+				.poll()) {
+			synchronized (generations) {
+				generations.remove(generation.id);
+				if (generation.file != null) {
+					undeletedFiles.add(generation.file);
+				}
+			}
+			collected.incrementAndGet();
+		}
+		synchronized (generations) {
+			// a jar may still be locked until the collected class loader's jar file has been finalized
+			undeletedFiles.removeIf(file -> FileUtils.deleteQuietly(file) || !file.exists());
+		}
+	}
+
+	/**
+	 * Closes the retired class loaders which are still reachable and deletes
+	 * the files of all retired class loaders. Must only be called when no
+	 * test run is executed anymore.
+	 */
+	public void shutdown() {
+		expunge();
+		final List<Generation> retired = new ArrayList<>();
+		synchronized (generations) {
+			for (final Generation generation : generations.values()) {
+				if (generation.retired != 0) {
+					retired.add(generation);
+				}
+			}
+		}
+		for (final Generation generation : retired) {
+			final ClassLoader classLoader = generation.get();
+			if (classLoader instanceof Closeable) {
+				try {
+					((Closeable) classLoader).close();
+					CLUtils.forceCloseUcp(classLoader);
+				} catch (final IOException | RuntimeException e) {
+					Utils.logError(e, "Could not close ClassLoader " + classLoader);
+				}
+			}
+			if (generation.file != null) {
+				FileUtils.deleteQuietly(generation.file);
+			}
+		}
+		synchronized (generations) {
+			undeletedFiles.removeIf(FileUtils::deleteQuietly);
+		}
+	}
+
+	/**
+	 * Number of classes defined by a class loader, read from the internal class list
+	 *
+	 * @return number of classes or -1 if the internal list is not accessible
+	 */
+	private static int loadedClassCount(final ClassLoader classLoader) {
+		try {
+			final Field classes = ClassLoader.class.getDeclaredField("classes");
+			classes.setAccessible(true);
+			final Collection<?> loadedClasses = (Collection<?>) classes.get(classLoader);
+			synchronized (loadedClasses) {
+				return loadedClasses.size();
+			}
+		} catch (final Exception e) {
+			return -1;
+		}
+	}
+}
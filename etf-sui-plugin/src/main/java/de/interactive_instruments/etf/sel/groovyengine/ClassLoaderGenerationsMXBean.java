@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+/**
+ * JMX view of the class loader generations
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public interface ClassLoaderGenerationsMXBean {
+
+	/**
+	 * Number of class loaders created so far
+	 */
+	long getCreatedGenerationCount();
+
+	/**
+	 * Number of retired class loaders that have been garbage collected
+	 */
+	long getCollectedGenerationCount();
+
+	/**
+	 * Number of retired class loaders that have not been garbage collected yet
+	 */
+	int getRetainedGenerationCount();
+
+	/**
+	 * Descriptions of the class loaders in use
+	 */
+	String[] getActiveGenerations();
+
+	/**
+	 * Descriptions of the retired class loaders that have not been garbage collected yet,
+	 * with the number of classes they have loaded
+	 */
+	String[] getRetainedGenerations();
+}
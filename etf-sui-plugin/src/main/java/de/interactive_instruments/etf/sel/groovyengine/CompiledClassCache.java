@@ -0,0 +1,201 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import groovy.lang.GroovySystem;
+
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * A persistent cache of compiled Groovy classes, which survives restarts of the JVM.
+ *
+ * The classes are stored as jar files, keyed by the hash of all source files, the
+ * Groovy version and the libraries on the class path. Only the most recently used jars are kept.
+ *
+ * The cache directory may be shared by several processes. Cached jars are therefore
+ * never added to a class loader directly, but a private copy is returned, so that
+ * evicting a jar never affects loaded classes.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class CompiledClassCache {
+
+	private static final String JAR_EXTENSION = ".jar";
+
+	private final Path cacheDir;
+	private final int maxEntries;
+	// jar of the classes that are currently loaded by this process, never evicted
+	private volatile Path current;
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param cacheDir directory of the cache, created if it does not exist
+	 * @param maxEntries number of jar files that are kept
+	 * @throws IOException if the cache directory can not be created
+	 */
+	CompiledClassCache(final File cacheDir, final int maxEntries) throws IOException {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("The number of cache entries must be greater than 0");
+		}
+		this.cacheDir = Files.createDirectories(cacheDir.toPath());
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Computes the cache key
+	 *
+	 * @param sources source files
+	 * @param classPaths libraries used for compiling, without the directory of the sources. The
+	 *        modification time of the directory changes with every added or removed file.
+	 * @return SHA-256 hash of the sources, the Groovy version and the libraries
+	 */
+	static String key(final GroovySourceSet sources, final Collection<String> classPaths) {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(sources.getHash()).append('\n');
+		builder.append(GroovySystem.getVersion()).append('\n');
+		for (final String classPath : classPaths) {
+			final File file = new File(classPath);
+			// Libraries may be replaced without changing their name
+			builder.append(classPath).append('|').append(file.lastModified()).append('|').append(file.length())
+					.append('\n');
+		}
+		return Utils.sha256(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns a private copy of the cached jar, which is deleted on exit
+	 *
+	 * @param key cache key
+	 * @return copy of the jar file or null if it is not cached
+	 * @throws IOException if the jar could not be copied
+	 */
+	Path get(final String key) throws IOException {
+		final Path jar = cacheDir.resolve(key + JAR_EXTENSION);
+		if (!Files.isRegularFile(jar)) {
+			return null;
+		}
+		touch(jar);
+		final Path copy = Files.createTempFile("etf_sel_groovy", JAR_EXTENSION);
+		try {
+			Files.copy(jar, copy, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final NoSuchFileException e) {
+			// evicted by another process in the meantime
+			Files.deleteIfExists(copy);
+			return null;
+		} catch (final IOException e) {
+			Files.deleteIfExists(copy);
+			throw e;
+		}
+		copy.toFile().deleteOnExit();
+		current = jar;
+		return copy;
+	}
+
+	/**
+	 * The modification time is used as last access time for evicting old entries
+	 */
+	private static void touch(final Path jar) {
+		try {
+			Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (final IOException e) {
+			Utils.logError(e, "Could not update the access time of cached classes " + jar);
+		}
+	}
+
+	/**
+	 * Packs compiled classes into a jar and stores it in the cache
+	 *
+	 * @param key cache key
+	 * @param classesDir directory with the compiled classes
+	 * @return cached jar file
+	 * @throws IOException if the jar could not be written
+	 */
+	Path put(final String key, final Path classesDir) throws IOException {
+		final Path jar = cacheDir.resolve(key + JAR_EXTENSION);
+		final Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+		try {
+			try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(tmp))) {
+				Files.walkFileTree(classesDir, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+						out.putNextEntry(new JarEntry(
+								classesDir.relativize(file).toString().replace(File.separatorChar, '/')));
+						Files.copy(file, (OutputStream) out);
+						out.closeEntry();
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+			Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		touch(jar);
+		current = jar;
+		evict();
+		return jar;
+	}
+
+	/**
+	 * Deletes the least recently used jars, except the one of the currently loaded classes.
+	 * Jars that can not be deleted, i.e. because they are opened by another process on
+	 * Windows, are skipped.
+	 */
+	private void evict() throws IOException {
+		final List<Path> jars = new ArrayList<>();
+		try (final Stream<Path> files = Files.list(cacheDir)) {
+			files.filter(p -> p.getFileName().toString().endsWith(JAR_EXTENSION)).forEach(jars::add);
+		}
+		if (jars.size() <= maxEntries) {
+			return;
+		}
+		jars.sort(Comparator.comparingLong(p -> p.toFile().lastModified()));
+		for (final Path jar : jars.subList(0, jars.size() - maxEntries)) {
+			if (jar.equals(current)) {
+				continue;
+			}
+			try {
+				Files.deleteIfExists(jar);
+			} catch (final IOException e) {
+				Utils.logError(e, "Could not evict cached classes " + jar);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledClassCache{" +
+				"dir=" + cacheDir +
+				", maxEntries=" + maxEntries +
+				'}';
+	}
+}
@@ -16,14 +16,17 @@
 package de.interactive_instruments.etf.sel.groovyengine;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
 
 import com.eviware.soapui.DefaultSoapUICore;
 import com.eviware.soapui.SoapUI;
 
+import org.apache.commons.io.FileUtils;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
@@ -45,6 +48,34 @@ final public class GroovyScriptEngine {
 	private IFile tmpFile;
 	private boolean initialized;
 	private ReloadableClStandaloneSoapUICore exchangedCore;
+	private final List<String> extLibClassPaths = new ArrayList<>();
+	// Sources of the classes in tmpFile
+	private GroovySourceSet compiledSources;
+
+	// Recompile only changed source files and their dependents
+	private static final boolean INCREMENTAL = Boolean.parseBoolean(
+			System.getProperty("etf.sel.groovy.incremental", "true"));
+	// Directory of the persistent compiled class cache, the cache is disabled if not set
+	private static final String CLASS_CACHE_DIR = System.getProperty("etf.sel.groovy.cache.dir", null);
+	// Number of compiled class jars that are kept in the cache
+	private static final int CLASS_CACHE_SIZE = Integer.getInteger("etf.sel.groovy.cache.size", 8);
+
+	// Number of threads used to compile independent source groups, 1 disables parallel compilation
+	private static final int COMPILE_THREADS = Integer.getInteger("etf.sel.groovy.compile.threads", 1);
+	private static final boolean COMPILER_DEBUG = Boolean.parseBoolean(
+			System.getProperty("etf.sel.groovy.debug", "true"));
+	private static final boolean COMPILER_VERBOSE = Boolean.parseBoolean(
+			System.getProperty("etf.sel.groovy.verbose", "true"));
+
+	// Watch the source directory and recompile on changes
+	private static final boolean WATCH = Boolean.getBoolean("etf.sel.groovy.watch");
+	// Time in milliseconds without further changes, before a recompilation is started
+	private static final long WATCH_DEBOUNCE = Long.getLong("etf.sel.groovy.watch.debounce", 500);
+
+	private CompiledClassCache classCache;
+	// Output directories and cached class copies of previous compilations, which are still
+	// on the class path, deleted on shutdown
+	private final List<IFile> retiredOutputDirs = Collections.synchronizedList(new ArrayList<>());
 
 	private static GroovyScriptEngine instance = new GroovyScriptEngine();
 
@@ -59,8 +90,8 @@ final public class GroovyScriptEngine {
 
 		Utils.log("Searching directory " + groovyScriptSourcesDir.getPath() + " for groovy source files");
 		if (groovyScriptSourcesDir != null) {
-			config.setDebug(true);
-			config.setVerbose(true);
+			config.setDebug(COMPILER_DEBUG);
+			config.setVerbose(COMPILER_VERBOSE);
 
 			try {
 				groovyScriptSourcesDir.expectDirIsReadable();
@@ -74,16 +105,41 @@ final public class GroovyScriptEngine {
 					exchangedCore = newCore;
 					SoapUI.setSoapUICore(exchangedCore);
 					for (URL url : newCore.getExtLibUrls()) {
-						classPaths.add(url.getPath());
+						extLibClassPaths.add(url.getPath());
 					}
 				}
 
+				classPaths.addAll(extLibClassPaths);
 				config.setClasspathList(classPaths);
 
+				if (CLASS_CACHE_DIR != null) {
+					classCache = new CompiledClassCache(new File(CLASS_CACHE_DIR), CLASS_CACHE_SIZE);
+				}
+
 				initialized = true;
 				tmpFile = null;
 				Utils.log("Starting initial compiling of groovy source files");
 				compile();
+
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					ClassLoaderGenerations.getInstance().shutdown();
+					synchronized (retiredOutputDirs) {
+						for (final IFile retiredOutputDir : retiredOutputDirs) {
+							FileUtils.deleteQuietly(retiredOutputDir);
+						}
+					}
+				}, "etf-sel-groovy-cleanup"));
+
+				if (WATCH) {
+					final GroovySourceWatcher watcher = new GroovySourceWatcher(groovyScriptSourcesDir.toPath(), WATCH_DEBOUNCE, () -> {
+						try {
+							compile();
+						} catch (Exception e) {
+							Utils.logError(e, "Recompilation of groovy source files failed");
+						}
+					});
+					watcher.start();
+				}
 			} catch (Exception e) {
 				initialized = false;
 				Utils.log("Compilation Unit failed to initialize");
@@ -103,59 +159,108 @@ final public class GroovyScriptEngine {
 		return instance;
 	}
 
-	public void compile() throws Exception {
+	public synchronized void compile() throws Exception {
 		if (!initialized) {
 			Utils.log("Compilation call skipped due to " +
 					"uninitialized Compilation unit!");
 			return;
 		}
 
-		CompilationUnit compUnit = new CompilationUnit(config);
-
 		groovyScriptSourcesDir.expectDirIsReadable();
 
-		List<? extends IFile> sourceFiles = groovyScriptSourcesDir.getFilesInDirRecursiveByRegex(
-				IFile.getRegexForExtension("groovy"), 15, false);
-
-		if (sourceFiles != null) {
-			final File[] files = (File[]) sourceFiles.toArray(new File[0]);
-			compUnit.addSources(files);
-		} else {
+		final GroovySourceSet sources = GroovySourceSet.scan(groovyScriptSourcesDir);
+		if (sources.isEmpty()) {
 			Utils.log("Compilation skipped: No source files found!");
 			return;
 		}
 
-		if (tmpFile != null) {
-			tmpFile.delete();
+		// the source directory is part of the class path, but covered by the hash of the sources
+		final String cacheKey = classCache != null ? CompiledClassCache.key(sources, extLibClassPaths) : null;
+		if (compiledSources == null && classCache != null) {
+			Path cachedClasses = null;
+			try {
+				cachedClasses = classCache.get(cacheKey);
+			} catch (IOException e) {
+				Utils.logError(e, "Could not load compiled classes from cache");
+			}
+			if (cachedClasses != null) {
+				Utils.log("Loading compiled classes from cache " + cachedClasses);
+				load(sources, new IFile(cachedClasses.toFile()));
+				return;
+			}
 		}
-		tmpFile = IFile.createTempDir("etf_sel_groovy");
-		tmpFile.setIdentifier("temporary compilation");
-		tmpFile.deleteOnExit();
-		config.setTargetDirectory(tmpFile.getPath());
 
+		final Set<GroovySourceSet.Source> changedSources;
+		final Set<GroovySourceSet.Source> removedSources;
+		if (INCREMENTAL && compiledSources != null) {
+			changedSources = sources.getChangedSources(compiledSources);
+			removedSources = sources.getRemovedSources(compiledSources);
+			if (changedSources.isEmpty() && removedSources.isEmpty()) {
+				Utils.log("Compilation skipped: No source files changed");
+				return;
+			}
+		} else {
+			changedSources = null;
+			removedSources = null;
+		}
+
+		final IFile outputDir = IFile.createTempDir("etf_sel_groovy");
+		outputDir.setIdentifier("temporary compilation");
+		outputDir.deleteOnExit();
+
+		final List<GroovyClass> compiledClasses;
 		try {
-			compUnit.compile();
+			if (changedSources != null) {
+				compiledClasses = compileIncremental(sources, changedSources, removedSources, outputDir);
+			} else {
+				compiledClasses = compile(sources, sources.getSources(), outputDir, config.getClasspath());
+			}
 		} catch (CompilationFailedException e) {
 			Utils.log("Compilation failed!");
 			Utils.logError(e);
+			FileUtils.deleteQuietly(outputDir);
 			return;
 		}
 
-		for (Object o : compUnit.getClasses()) {
-			Utils.log("Compiled class: " + ((GroovyClass) o).getName());
+		for (GroovyClass compiledClass : compiledClasses) {
+			Utils.log("Compiled class: " + compiledClass.getName());
+		}
+
+		if (classCache != null) {
+			try {
+				classCache.put(cacheKey, outputDir.toPath());
+			} catch (IOException e) {
+				Utils.logError(e, "Could not cache compiled classes");
+			}
 		}
 
+		load(sources, outputDir);
+	}
+
+	/**
+	 * Replaces the compiled classes in the extension class loader
+	 *
+	 * @param sources sources of the classes
+	 * @param classes directory or cached jar with the compiled classes
+	 */
+	private void load(final GroovySourceSet sources, final IFile classes) throws Exception {
+		final IFile previousOutput = tmpFile;
+		tmpFile = classes;
+		compiledSources = sources;
+
 		boolean coreNeedsReset = !(SoapUI.getSoapUICore() instanceof DefaultSoapUICore);
 
 		if (coreNeedsReset) {
 			if (!(SoapUI.getSoapUICore() instanceof ReloadableClStandaloneSoapUICore)) {
 				throw new Exception("Modified SoapUI Core not accessible");
 			}
-			((ReloadableClStandaloneSoapUICore) SoapUI.getSoapUICore()).reset();
+			// Atomic swap, the previous class loader stays open for running tests until it
+			// has been garbage collected, then its classes are deleted
+			((ReloadableClStandaloneSoapUICore) SoapUI.getSoapUICore()).replace(tmpFile);
+		} else {
+			SoapUI.getSoapUICore().getExtensionClassLoader().addFile(tmpFile);
 		}
 
-		SoapUI.getSoapUICore().getExtensionClassLoader().addFile(tmpFile);
-
 		if (coreNeedsReset) {
 			// Selftest
 			boolean found = false;
@@ -169,6 +274,128 @@ final public class GroovyScriptEngine {
 					SoapUI.getSoapUICore().getExtensionClassLoader() +
 					" added. Selftest OK: " + found);
 		}
+
+		// Without the reloadable class loader, the previous output directory or the private
+		// copy of a cached jar stays on the class path until shutdown.
+		if (previousOutput != null && !coreNeedsReset) {
+			retiredOutputDirs.add(previousOutput);
+		}
+	}
+
+	/**
+	 * Recompiles the changed source files and the files that depend on them. The class files
+	 * of all other source files are copied from the previous output directory.
+	 */
+	private List<GroovyClass> compileIncremental(final GroovySourceSet sources,
+			final Set<GroovySourceSet.Source> changedSources, final Set<GroovySourceSet.Source> removedSources,
+			final IFile outputDir) throws IOException {
+		final Set<String> changedClasses = new HashSet<>();
+		for (final GroovySourceSet.Source source : changedSources) {
+			changedClasses.addAll(source.getDeclaredClasses());
+		}
+		final Set<GroovySourceSet.Source> affectedSources = new LinkedHashSet<>(changedSources);
+		final List<String> staleClassFiles = new ArrayList<>();
+		for (final GroovySourceSet.Source source : removedSources) {
+			changedClasses.addAll(source.getDeclaredClasses());
+			staleClassFiles.addAll(source.getClassFilePaths());
+		}
+		for (final GroovySourceSet.Source source : changedSources) {
+			final GroovySourceSet.Source previousSource = compiledSources.getSource(source.getPath());
+			if (previousSource != null) {
+				changedClasses.addAll(previousSource.getDeclaredClasses());
+			}
+		}
+		affectedSources.addAll(sources.getDependents(changedClasses));
+		for (final GroovySourceSet.Source source : affectedSources) {
+			final GroovySourceSet.Source previousSource = compiledSources.getSource(source.getPath());
+			if (previousSource != null) {
+				staleClassFiles.addAll(previousSource.getClassFilePaths());
+			}
+		}
+		Utils.log("Recompiling " + affectedSources.size() + " of " + sources.getSources().size()
+				+ " source files: " + affectedSources);
+
+		if (tmpFile.isFile()) {
+			// classes loaded from the class cache
+			try (final FileSystem jar = FileSystems.newFileSystem(tmpFile.toPath(), (ClassLoader) null)) {
+				copyClassFiles(jar.getPath("/"), outputDir.toPath(), staleClassFiles);
+			}
+		} else {
+			copyClassFiles(tmpFile.toPath(), outputDir.toPath(), staleClassFiles);
+		}
+
+		return compile(sources, affectedSources, outputDir, outputClassPaths(outputDir));
+	}
+
+	/**
+	 * Compiles the source files in one Compilation Unit or, if enabled, independent source
+	 * groups in parallel. If the parallel compilation fails, for instance because of a
+	 * dependency that was not detected, the files are compiled in one Compilation Unit.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<GroovyClass> compile(final GroovySourceSet sources, final Collection<GroovySourceSet.Source> toCompile,
+			final IFile outputDir, final List<String> classPaths) {
+		if (COMPILE_THREADS > 1 && toCompile.size() > 1) {
+			try {
+				return new ParallelGroovyCompiler(configFor(outputDir, outputClassPaths(outputDir)), COMPILE_THREADS)
+						.compile(sources, toCompile);
+			} catch (CompilationFailedException e) {
+				Utils.log("Parallel compilation failed, compiling in one Compilation Unit: " + e.getMessage());
+			}
+		}
+		final CompilationUnit compUnit = new CompilationUnit(configFor(outputDir, classPaths));
+		for (final GroovySourceSet.Source source : toCompile) {
+			compUnit.addSource(source.getFile());
+		}
+		compUnit.compile();
+		return compUnit.getClasses();
+	}
+
+	/**
+	 * Class path without the source directory, classes that are not compiled are resolved
+	 * from the output directory
+	 */
+	private List<String> outputClassPaths(final IFile outputDir) {
+		final List<String> classPaths = new ArrayList<>();
+		classPaths.add(outputDir.getPath());
+		classPaths.addAll(extLibClassPaths);
+		return classPaths;
+	}
+
+	private CompilerConfiguration configFor(final IFile outputDir, final List<String> classPaths) {
+		final CompilerConfiguration compilerConfiguration = new CompilerConfiguration(config);
+		compilerConfiguration.setClasspathList(classPaths);
+		compilerConfiguration.setTargetDirectory(outputDir.getPath());
+		return compilerConfiguration;
+	}
+
+	/**
+	 * Copies all class files except the stale ones and their inner classes
+	 */
+	private static void copyClassFiles(final Path sourceDir, final Path targetDir, final List<String> staleClassFiles)
+			throws IOException {
+		Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				final String path = sourceDir.relativize(file).toString().replace(File.separatorChar, '/');
+				if (path.endsWith(".class") && isStale(path.substring(0, path.length() - ".class".length()))) {
+					return FileVisitResult.CONTINUE;
+				}
+				final Path target = targetDir.resolve(sourceDir.relativize(file).toString());
+				Files.createDirectories(target.getParent());
+				Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+				return FileVisitResult.CONTINUE;
+			}
+
+			private boolean isStale(final String classFilePath) {
+				for (final String staleClassFile : staleClassFiles) {
+					if (classFilePath.equals(staleClassFile) || classFilePath.startsWith(staleClassFile + "$")) {
+						return true;
+					}
+				}
+				return false;
+			}
+		});
 	}
 
 	@SuppressWarnings("unused")
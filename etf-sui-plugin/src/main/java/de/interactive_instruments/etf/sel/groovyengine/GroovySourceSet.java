@@ -0,0 +1,272 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.interactive_instruments.IFile;
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * A snapshot of the Groovy source files in a directory, with the content hash,
+ * the declared classes and the dependencies of each file.
+ *
+ * Dependencies are detected from the source text: a file depends on another file
+ * if one of its identifiers equals the simple name of a class declared in the other
+ * file, including the script class, which is named after the file and may start
+ * with a lower case letter. Every identifier is considered, also in comments and
+ * strings, which over-approximates the real dependencies and only causes
+ * unnecessary recompilations. Classes that are only referenced dynamically, i.e.
+ * by a name that is built at runtime, are not detected.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class GroovySourceSet {
+
+	private static final int MAX_DIR_DEPTH = 15;
+	private static final Pattern PACKAGE_DECLARATION = Pattern.compile("^\\s*package\\s+([\\w.]+)", Pattern.MULTILINE);
+	private static final Pattern CLASS_DECLARATION = Pattern.compile("\\b(?:class|interface|enum|trait)\\s+([A-Za-z_$][\\w$]*)");
+	private static final Pattern IDENTIFIER = Pattern.compile(
+			"(?<!\\p{javaJavaIdentifierPart})\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*");
+
+	/**
+	 * A Groovy source file
+	 */
+	static final class Source {
+		private final File file;
+		private final String path;
+		private final String hash;
+		private final String packageName;
+		private final Set<String> declaredClasses;
+		private final Set<String> referencedNames;
+
+		private Source(final File file, final String path, final String content, final String hash) {
+			this.file = file;
+			this.path = path;
+			this.hash = hash;
+			final Matcher packageMatcher = PACKAGE_DECLARATION.matcher(content);
+			this.packageName = packageMatcher.find() ? packageMatcher.group(1) : "";
+			final Set<String> classes = new LinkedHashSet<>();
+			// Scripts are compiled to a class named after the file
+			final String fileName = file.getName();
+			classes.add(fileName.substring(0, fileName.length() - ".groovy".length()));
+			final Matcher classMatcher = CLASS_DECLARATION.matcher(content);
+			while (classMatcher.find()) {
+				classes.add(classMatcher.group(1));
+			}
+			this.declaredClasses = Collections.unmodifiableSet(classes);
+			final Set<String> names = new HashSet<>();
+			final Matcher nameMatcher = IDENTIFIER.matcher(content);
+			while (nameMatcher.find()) {
+				names.add(nameMatcher.group());
+			}
+			names.removeAll(classes);
+			this.referencedNames = names;
+		}
+
+		File getFile() {
+			return file;
+		}
+
+		/**
+		 * Path relative to the source directory, used as identifier
+		 */
+		String getPath() {
+			return path;
+		}
+
+		/**
+		 * SHA-256 hash of the file content
+		 */
+		String getHash() {
+			return hash;
+		}
+
+		String getPackageName() {
+			return packageName;
+		}
+
+		/**
+		 * Simple names of the top level classes that are compiled from this file
+		 */
+		Set<String> getDeclaredClasses() {
+			return declaredClasses;
+		}
+
+		/**
+		 * Paths of the class files compiled from this file, relative to the output directory,
+		 * without the ".class" extension. Inner classes and closures start with the path
+		 * followed by a '$'.
+		 */
+		List<String> getClassFilePaths() {
+			final String packagePath = packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/";
+			final List<String> paths = new ArrayList<>(declaredClasses.size());
+			for (final String declaredClass : declaredClasses) {
+				paths.add(packagePath + declaredClass);
+			}
+			return paths;
+		}
+
+		boolean references(final Collection<String> classNames) {
+			for (final String className : classNames) {
+				if (referencedNames.contains(className)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return path;
+		}
+	}
+
+	private final Map<String, Source> sources;
+
+	private GroovySourceSet(final Map<String, Source> sources) {
+		this.sources = sources;
+	}
+
+	/**
+	 * Reads all Groovy source files in a directory
+	 *
+	 * @param sourceDir source directory
+	 * @return source set, which is empty if the directory does not contain Groovy files
+	 * @throws IOException if a file can not be read
+	 */
+	static GroovySourceSet scan(final IFile sourceDir) throws IOException {
+		final List<? extends IFile> files = sourceDir.getFilesInDirRecursiveByRegex(
+				IFile.getRegexForExtension("groovy"), MAX_DIR_DEPTH, false);
+		final Map<String, Source> sources = new TreeMap<>();
+		if (files != null) {
+			final String sourceDirPath = sourceDir.getAbsoluteFile().toURI().getPath();
+			for (final IFile file : files) {
+				final byte[] bytes = Files.readAllBytes(file.toPath());
+				final String path = file.getAbsoluteFile().toURI().getPath().substring(sourceDirPath.length());
+				sources.put(path, new Source(file, path, new String(bytes, StandardCharsets.UTF_8), Utils.sha256(bytes)));
+			}
+		}
+		return new GroovySourceSet(sources);
+	}
+
+	boolean isEmpty() {
+		return sources.isEmpty();
+	}
+
+	Collection<Source> getSources() {
+		return sources.values();
+	}
+
+	Source getSource(final String path) {
+		return sources.get(path);
+	}
+
+	/**
+	 * Files that are new or have a different content than in the previous snapshot
+	 *
+	 * @param previous previous snapshot
+	 * @return changed files
+	 */
+	Set<Source> getChangedSources(final GroovySourceSet previous) {
+		final Set<Source> changed = new LinkedHashSet<>();
+		for (final Source source : sources.values()) {
+			final Source previousSource = previous.getSource(source.getPath());
+			if (previousSource == null || !previousSource.getHash().equals(source.getHash())) {
+				changed.add(source);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Files of the previous snapshot that do not exist anymore
+	 *
+	 * @param previous previous snapshot
+	 * @return removed files of the previous snapshot
+	 */
+	Set<Source> getRemovedSources(final GroovySourceSet previous) {
+		final Set<Source> removed = new LinkedHashSet<>();
+		for (final Source previousSource : previous.getSources()) {
+			if (!sources.containsKey(previousSource.getPath())) {
+				removed.add(previousSource);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns the files that reference one of the classes, directly or transitively
+	 *
+	 * @param classNames simple class names
+	 * @return dependent files
+	 */
+	Set<Source> getDependents(final Collection<String> classNames) {
+		final Set<Source> dependents = new LinkedHashSet<>();
+		Set<String> names = new HashSet<>(classNames);
+		while (!names.isEmpty()) {
+			final Set<String> newNames = new HashSet<>();
+			for (final Source source : sources.values()) {
+				if (!dependents.contains(source) && source.references(names)) {
+					dependents.add(source);
+					newNames.addAll(source.getDeclaredClasses());
+				}
+			}
+			names = newNames;
+		}
+		return dependents;
+	}
+
+	/**
+	 * Dependencies between a subset of the files of this snapshot. Dependencies
+	 * on files outside the subset are omitted.
+	 *
+	 * @param subset files of this snapshot
+	 * @return files mapped to the files of the subset they depend on
+	 */
+	Map<Source, Set<Source>> getDependencyGraph(final Collection<Source> subset) {
+		final Map<Source, Set<Source>> graph = new LinkedHashMap<>();
+		for (final Source source : subset) {
+			final Set<Source> dependencies = new LinkedHashSet<>();
+			for (final Source other : subset) {
+				if (other != source && source.references(other.getDeclaredClasses())) {
+					dependencies.add(other);
+				}
+			}
+			graph.put(source, dependencies);
+		}
+		return graph;
+	}
+
+	/**
+	 * Hash over the paths and content hashes of all files
+	 *
+	 * @return SHA-256 hash
+	 */
+	String getHash() {
+		final StringBuilder builder = new StringBuilder();
+		for (final Source source : sources.values()) {
+			builder.append(source.getPath()).append('=').append(source.getHash()).append('\n');
+		}
+		return Utils.sha256(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
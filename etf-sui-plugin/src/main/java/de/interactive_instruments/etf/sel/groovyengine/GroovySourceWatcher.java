@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * Watches a Groovy source directory and its sub directories and calls a
+ * listener after files have been changed.
+ *
+ * Changes are debounced: the listener is called once, after no further
+ * change has been detected for the debounce time. Editors which write a file
+ * in several steps and bulk updates of a directory therefore trigger only
+ * one recompilation.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class GroovySourceWatcher implements AutoCloseable {
+
+	private final Path sourceDir;
+	private final long debounceMillis;
+	private final Runnable listener;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	/**
+	 * Creates a watcher
+	 *
+	 * @param sourceDir directory to watch
+	 * @param debounceMillis time without changes before the listener is called
+	 * @param listener called after files have been changed
+	 * @throws IOException if the directory can not be watched
+	 */
+	GroovySourceWatcher(final Path sourceDir, final long debounceMillis, final Runnable listener) throws IOException {
+		this.sourceDir = sourceDir;
+		this.debounceMillis = debounceMillis;
+		this.listener = listener;
+		this.watchService = sourceDir.getFileSystem().newWatchService();
+		registerRecursive(sourceDir);
+		this.thread = new Thread(this::watch, "etf-sel-groovy-watcher");
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+		Utils.log("Watching " + sourceDir + " for changed groovy source files");
+	}
+
+	private void watch() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				// Wait for the first change, then until no more changes occur
+				WatchKey key = watchService.take();
+				boolean changed = false;
+				while (key != null) {
+					changed |= handleEvents(key);
+					key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+				}
+				if (changed) {
+					Utils.log("Groovy source files changed, recompiling");
+					listener.run();
+				}
+			}
+		} catch (final InterruptedException | ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	/**
+	 * @return true if a Groovy file or a directory has been changed
+	 */
+	private boolean handleEvents(final WatchKey key) {
+		boolean changed = false;
+		final Path dir = (Path) key.watchable();
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				changed = true;
+				continue;
+			}
+			final Path path = dir.resolve((Path) event.context());
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				try {
+					registerRecursive(path);
+				} catch (final IOException e) {
+					Utils.logError(e, "Could not watch directory " + path);
+				}
+				changed = true;
+			} else if (path.getFileName().toString().endsWith(".groovy") || Files.isDirectory(path)) {
+				changed = true;
+			} else if (event.kind() == ENTRY_DELETE) {
+				// could have been a directory
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	private void registerRecursive(final Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path subDir, final BasicFileAttributes attrs)
+					throws IOException {
+				subDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		thread.interrupt();
+		watchService.close();
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * The packages which contain classes in the jars and directories of a class loader.
+ *
+ * The index is used to skip the search of all URLs of a class loader for classes
+ * it can not provide. If the index can not be complete, for instance because of
+ * a non-file URL or a jar with a Class-Path manifest entry, it assumes that every
+ * package may be provided.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class PackageIndex {
+
+	private final Set<String> packages;
+	private final boolean complete;
+
+	private PackageIndex(final Set<String> packages, final boolean complete) {
+		this.packages = packages;
+		this.complete = complete;
+	}
+
+	/**
+	 * Reads the packages of all jars and directories
+	 *
+	 * @param urls class loader URLs
+	 * @return package index
+	 */
+	static PackageIndex build(final URL[] urls) {
+		final Set<String> packages = new HashSet<>();
+		boolean complete = true;
+		for (final URL url : urls) {
+			try {
+				if (!"file".equals(url.getProtocol())) {
+					complete = false;
+					continue;
+				}
+				final File file = new File(url.toURI());
+				if (file.isDirectory()) {
+					addDirectory(file.toPath(), packages);
+				} else if (file.isFile()) {
+					complete &= addJar(file, packages);
+				}
+			} catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+				complete = false;
+			}
+		}
+		return new PackageIndex(packages, complete);
+	}
+
+	/**
+	 * Returns false if the class is certainly not provided by the URLs
+	 *
+	 * @param className binary name of the class
+	 * @return false if the package of the class is not in the index
+	 */
+	boolean mayProvide(final String className) {
+		if (!complete) {
+			return true;
+		}
+		final int packageEnd = className.lastIndexOf('.');
+		return packages.contains(packageEnd == -1 ? "" : className.substring(0, packageEnd));
+	}
+
+	int size() {
+		return packages.size();
+	}
+
+	boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return false if the jar references other jars
+	 */
+	private static boolean addJar(final File file, final Set<String> packages) throws IOException {
+		try (final JarFile jar = new JarFile(file)) {
+			final Enumeration<JarEntry> entries = jar.entries();
+			while (entries.hasMoreElements()) {
+				addEntry(entries.nextElement().getName(), packages);
+			}
+			final Manifest manifest = jar.getManifest();
+			return manifest == null || manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) == null;
+		}
+	}
+
+	private static void addDirectory(final Path dir, final Set<String> packages) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+				addEntry(dir.relativize(file).toString().replace(File.separatorChar, '/'), packages);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static void addEntry(final String name, final Set<String> packages) {
+		if (name.endsWith(".class")) {
+			final int packageEnd = name.lastIndexOf('/');
+			packages.add(packageEnd == -1 ? "" : name.substring(0, packageEnd).replace('/', '.'));
+		}
+	}
+}
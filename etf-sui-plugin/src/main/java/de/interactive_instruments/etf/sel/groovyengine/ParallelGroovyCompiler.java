@@ -0,0 +1,158 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.groovyengine;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import de.interactive_instruments.etf.sel.StronglyConnectedComponents;
+
+/**
+ * Compiles Groovy source files concurrently.
+ *
+ * The files are partitioned into strongly connected groups of the dependency
+ * graph. Files that depend on each other are compiled together in one
+ * Compilation Unit. A group is compiled as soon as all groups it depends on
+ * have been written to the target directory, from where their classes are
+ * resolved. Independent groups are compiled at the same time.
+ *
+ * The target directory must be the first entry of the class path and the source
+ * directory must not be on the class path, otherwise a Compilation Unit
+ * compiles the sources of other groups again.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class ParallelGroovyCompiler {
+
+	private final CompilerConfiguration config;
+	private final int threads;
+
+	ParallelGroovyCompiler(final CompilerConfiguration config, final int threads) {
+		this.config = config;
+		this.threads = threads;
+	}
+
+	/**
+	 * Compiles the files
+	 *
+	 * @param sources snapshot the files belong to
+	 * @param toCompile files to compile, all other files of the snapshot must already be compiled
+	 * @return compiled classes
+	 * @throws CompilationFailedException if a group could not be compiled
+	 */
+	List<GroovyClass> compile(final GroovySourceSet sources, final Collection<GroovySourceSet.Source> toCompile)
+			throws CompilationFailedException {
+		if (toCompile.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final Map<GroovySourceSet.Source, Set<GroovySourceSet.Source>> graph = sources.getDependencyGraph(toCompile);
+		final List<Set<GroovySourceSet.Source>> groups = stronglyConnectedGroups(graph);
+
+		final AtomicInteger threadCounter = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, groups.size()), r -> {
+			final Thread thread = new Thread(r, "etf-sel-groovy-compiler-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			final Map<GroovySourceSet.Source, CompletableFuture<List<GroovyClass>>> compiled = new HashMap<>();
+			final List<CompletableFuture<List<GroovyClass>>> results = new ArrayList<>(groups.size());
+			// Groups are ordered: the groups a group depends on come first
+			for (final Set<GroovySourceSet.Source> group : groups) {
+				final Set<CompletableFuture<List<GroovyClass>>> dependencies = new HashSet<>();
+				for (final GroovySourceSet.Source source : group) {
+					for (final GroovySourceSet.Source dependency : graph.get(source)) {
+						if (!group.contains(dependency)) {
+							dependencies.add(compiled.get(dependency));
+						}
+					}
+				}
+				final CompletableFuture<List<GroovyClass>> result = CompletableFuture
+						.allOf(dependencies.toArray(new CompletableFuture[0]))
+						.thenApplyAsync(v -> compileGroup(group), executor);
+				for (final GroovySourceSet.Source source : group) {
+					compiled.put(source, result);
+				}
+				results.add(result);
+			}
+
+			final List<GroovyClass> classes = new ArrayList<>();
+			for (final CompletableFuture<List<GroovyClass>> result : results) {
+				classes.addAll(result.join());
+			}
+			return classes;
+		} catch (final CompletionException e) {
+			if (e.getCause() instanceof CompilationFailedException) {
+				throw (CompilationFailedException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<GroovyClass> compileGroup(final Set<GroovySourceSet.Source> group) {
+		final CompilationUnit compUnit = new CompilationUnit(config);
+		for (final GroovySourceSet.Source source : group) {
+			compUnit.addSource(source.getFile());
+		}
+		compUnit.compile();
+		return compUnit.getClasses();
+	}
+
+	/**
+	 * The groups are returned in reverse topological order, so a group comes after
+	 * all groups it depends on.
+	 */
+	private static List<Set<GroovySourceSet.Source>> stronglyConnectedGroups(
+			final Map<GroovySourceSet.Source, Set<GroovySourceSet.Source>> graph) {
+		final List<GroovySourceSet.Source> sources = new ArrayList<>(graph.keySet());
+		final Map<GroovySourceSet.Source, Integer> indices = new HashMap<>();
+		for (int i = 0; i < sources.size(); i++) {
+			indices.put(sources.get(i), i);
+		}
+		final int[][] edges = new int[sources.size()][];
+		for (int i = 0; i < sources.size(); i++) {
+			final Set<GroovySourceSet.Source> dependencies = graph.get(sources.get(i));
+			edges[i] = new int[dependencies.size()];
+			int e = 0;
+			for (final GroovySourceSet.Source dependency : dependencies) {
+				edges[i][e++] = indices.get(dependency);
+			}
+		}
+		final List<Set<GroovySourceSet.Source>> groups = new ArrayList<>();
+		for (final BitSet component : StronglyConnectedComponents.find(edges)) {
+			final Set<GroovySourceSet.Source> group = new LinkedHashSet<>();
+			for (int i = component.nextSetBit(0); i >= 0; i = component.nextSetBit(i + 1)) {
+				group.add(sources.get(i));
+			}
+			groups.add(group);
+		}
+		return groups;
+	}
+}
@@ -16,6 +16,7 @@
 package de.interactive_instruments.etf.sel.groovyengine;
 
 import java.io.File;
+import java.net.MalformedURLException;
 import java.net.URL;
 
 import com.eviware.soapui.SoapUI;
@@ -57,6 +58,10 @@ public class ReloadableClStandaloneSoapUICore extends StandaloneSoapUICore {
 		exchangedExtClassLoader.reset();
 	}
 
+	public void replace(final File file) throws MalformedURLException {
+		exchangedExtClassLoader.replace(file);
+	}
+
 	private void init() {
 		final SoapUIExtensionClassLoader parentCl = exchangedCore.getExtensionClassLoader();
 		exchangedExtClassLoader = new ReloadableSoapUIExtensionClassLoader(
@@ -33,15 +33,19 @@ import java.util.jar.JarFile;
 public final class ReloadableClassLoader extends URLClassLoader {
 
 	private URLClassLoader iCL;
+	// Generation ID of the delegate class loader
+	private long generation;
 
 	public ReloadableClassLoader(URL[] urls) {
 		super(urls);
 		iCL = new URLClassLoader(urls);
+		generation = ClassLoaderGenerations.getInstance().register(iCL, toString());
 	}
 
 	public ReloadableClassLoader(URL[] urls, ClassLoader parent) {
 		super(urls, parent);
 		iCL = new URLClassLoader(urls, parent);
+		generation = ClassLoaderGenerations.getInstance().register(iCL, toString());
 	}
 
 	public void reload() {
@@ -56,7 +60,7 @@ public final class ReloadableClassLoader extends URLClassLoader {
 			forceCloseUcp(iCL);
 		} catch (Exception e) {}
 		iCL = null;
-		iCL = new URLClassLoader(urls, parent);
+		exchange(new URLClassLoader(urls, parent));
 	}
 
 	public void resetAndLoad(URL[] urls) {
@@ -65,7 +69,21 @@ public final class ReloadableClassLoader extends URLClassLoader {
 			forceCloseUcp(iCL);
 		} catch (Exception e) {}
 		iCL = null;
-		iCL = new URLClassLoader(urls);
+		exchange(new URLClassLoader(urls));
+	}
+
+	private void exchange(final URLClassLoader newCL) {
+		final long previousGeneration = generation;
+		iCL = newCL;
+		generation = ClassLoaderGenerations.getInstance().register(newCL, toString());
+		ClassLoaderGenerations.getInstance().retire(previousGeneration);
+	}
+
+	/**
+	 * Generation ID of the class loader in use, see {@link ClassLoaderGenerations}
+	 */
+	public long getGeneration() {
+		return generation;
 	}
 
 	// Workaround for Windows: close all jar file handles
@@ -21,10 +21,15 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.eviware.soapui.SoapUIExtensionClassLoader;
 
-import de.interactive_instruments.CLUtils;
+import de.interactive_instruments.etf.sel.Utils;
 
 /**
  * An SoapUIExtensionClassLoader which can reload objects from external achieves
@@ -34,12 +39,47 @@ import de.interactive_instruments.CLUtils;
  */
 public final class ReloadableSoapUIExtensionClassLoader extends SoapUIExtensionClassLoader {
 
-	private SoapUIExtensionClassLoader iCL;
+	private volatile SoapUIExtensionClassLoader iCL;
 	private final URL[] urls;
+	// File added by replace() to the current delegate, guarded by this
+	private File file;
+
+	// Maximum number of class names in the negative lookup cache of a class loader
+	private static final int MAX_MISSING_CLASSES = 16384;
+
+	/**
+	 * Package index and negative lookup cache of a delegate class loader
+	 */
+	private static final class Lookup {
+		private final SoapUIExtensionClassLoader classLoader;
+		private final int modifications;
+		private final PackageIndex index;
+		private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+
+		private Lookup(final SoapUIExtensionClassLoader classLoader, final int modifications) {
+			this.classLoader = classLoader;
+			this.modifications = modifications;
+			this.index = PackageIndex.build(classLoader.getURLs());
+		}
+	}
+
+	private volatile Lookup lookup;
+	// Incremented when URLs are added to the delegate class loader
+	private final AtomicInteger modifications = new AtomicInteger();
+
+	private final LongAdder loadCount = new LongAdder();
+	private final LongAdder loadTimeNanos = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder negativeCacheHits = new LongAdder();
+	private final LongAdder indexSkips = new LongAdder();
+
+	// Generation ID of the delegate class loader
+	private volatile long generation;
 
 	public ReloadableSoapUIExtensionClassLoader(final URL[] urls, ClassLoader parent) {
 		super(urls, parent);
 		iCL = new SoapUIExtensionClassLoader(urls, parent);
+		generation = ClassLoaderGenerations.getInstance().register(iCL, toString());
 		this.urls = urls;
 		try {
 			this.close();
@@ -49,47 +89,73 @@ public final class ReloadableSoapUIExtensionClassLoader extends SoapUIExtensionC
 	}
 
 	public void resetAndLoad(final URL[] urls, ClassLoader parent) {
-
-		try {
-			iCL.close();
-			CLUtils.forceCloseUcp(iCL);
-		} catch (Exception e) {}
-		iCL = null;
-		final SoapUIExtensionClassLoader newCL = new SoapUIExtensionClassLoader(urls, parent);
-		System.out.println("Replacing ClassLoader " + iCL + " with " + newCL);
-		iCL = newCL;
+		exchange(new SoapUIExtensionClassLoader(urls, parent), null);
 	}
 
 	public void resetAndLoad(final URL[] urls) {
-		try {
-			iCL.close();
-			CLUtils.forceCloseUcp(iCL);
-		} catch (Exception e) {}
-		final SoapUIExtensionClassLoader newCL = new SoapUIExtensionClassLoader(urls, this.getParent());
-		System.out.println("Replacing ClassLoader " + iCL + " with " + newCL);
-		iCL = null;
-		iCL = newCL;
+		exchange(new SoapUIExtensionClassLoader(urls, this.getParent()), null);
 	}
 
 	public void reset() {
-		try {
-			iCL.close();
-			CLUtils.forceCloseUcp(iCL);
-		} catch (Exception e) {}
+		exchange(new SoapUIExtensionClassLoader(this.urls, this.getParent()), null);
+	}
+
+	/**
+	 * Replaces the class loader with a new one for the initial URLs and an additional file,
+	 * which is visible to other threads only after the file has been added.
+	 *
+	 * The file is owned by the class loader from then on: it is deleted after the class loader
+	 * has been replaced again and garbage collected, see {@link ClassLoaderGenerations}.
+	 *
+	 * @param file file to add to the new class loader
+	 * @throws MalformedURLException if the file can not be converted to an URL
+	 */
+	public void replace(final File file) throws MalformedURLException {
 		final SoapUIExtensionClassLoader newCL = new SoapUIExtensionClassLoader(this.urls, this.getParent());
-		System.out.println("Replacing ClassLoader " + iCL + " with " + newCL);
-		iCL = null;
+		newCL.addFile(file);
+		exchange(newCL, file);
+	}
+
+	/**
+	 * Publishes a new delegate class loader and retires the previous one.
+	 *
+	 * The previous class loader is not closed, as test runs which are still executed with it
+	 * may load further classes or resources. Its file is deleted by the
+	 * {@link ClassLoaderGenerations} after it has been garbage collected, or on shutdown.
+	 *
+	 * @param newCL new delegate class loader
+	 * @param newFile file added to the new class loader by {@link #replace(File)} or null
+	 */
+	private synchronized void exchange(final SoapUIExtensionClassLoader newCL, final File newFile) {
+		Utils.log("Replacing ClassLoader " + iCL + " with " + newCL);
+		final File previousFile = file;
+		final long previousGeneration = generation;
+		generation = ClassLoaderGenerations.getInstance().register(newCL, toString());
 		iCL = newCL;
+		file = newFile;
+		// drop the reference to the previous class loader
+		lookup = null;
+		ClassLoaderGenerations.getInstance().retire(previousGeneration,
+				previousFile != null && !previousFile.equals(newFile) ? previousFile : null);
+	}
+
+	/**
+	 * Generation ID of the class loader in use, see {@link ClassLoaderGenerations}
+	 */
+	public long getGeneration() {
+		return generation;
 	}
 
 	@Override
 	public void addFile(final File file) throws MalformedURLException {
 		iCL.addFile(file);
+		modifications.incrementAndGet();
 	}
 
 	@Override
 	public void addURL(final URL url) {
 		iCL.addURL(url);
+		modifications.incrementAndGet();
 	}
 
 	@Override
@@ -136,12 +202,96 @@ public final class ReloadableSoapUIExtensionClassLoader extends SoapUIExtensionC
 	@Override
 	protected Class<?> loadClass(final String name,
 			boolean resolve) throws ClassNotFoundException {
-		return iCL.loadClass(name);
+		return findClass(name);
 	}
 
 	@Override
 	public Class<?> findClass(final String name) throws ClassNotFoundException {
-		return iCL.loadClass(name);
+		final long start = System.nanoTime();
+		final Lookup currentLookup = currentLookup();
+		try {
+			if (currentLookup.missingClasses.contains(name)) {
+				negativeCacheHits.increment();
+				throw new ClassNotFoundException(name);
+			}
+			try {
+				final ClassLoader parent = currentLookup.classLoader.getParent();
+				if (parent != null && !currentLookup.index.mayProvide(name)) {
+					// Skip the search of all URLs
+					indexSkips.increment();
+					return parent.loadClass(name);
+				}
+				return currentLookup.classLoader.loadClass(name);
+			} catch (ClassNotFoundException e) {
+				misses.increment();
+				if (currentLookup.missingClasses.size() < MAX_MISSING_CLASSES) {
+					currentLookup.missingClasses.add(name);
+				}
+				throw e;
+			}
+		} finally {
+			loadCount.increment();
+			loadTimeNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns the lookup state of the current delegate, the package index is built
+	 * on the first lookup after the delegate has been replaced or URLs have been added.
+	 */
+	private Lookup currentLookup() {
+		final SoapUIExtensionClassLoader classLoader = iCL;
+		final int currentModifications = modifications.get();
+		Lookup currentLookup = lookup;
+		if (currentLookup == null || currentLookup.classLoader != classLoader
+				|| currentLookup.modifications != currentModifications) {
+			currentLookup = new Lookup(classLoader, currentModifications);
+			lookup = currentLookup;
+		}
+		return currentLookup;
+	}
+
+	/**
+	 * Number of class lookups
+	 */
+	public long getLoadCount() {
+		return loadCount.sum();
+	}
+
+	/**
+	 * Time spent in class lookups in milliseconds
+	 */
+	public long getLoadTime() {
+		return TimeUnit.NANOSECONDS.toMillis(loadTimeNanos.sum());
+	}
+
+	/**
+	 * Number of lookups of classes which were not found
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Number of lookups answered by the negative lookup cache
+	 */
+	public long getNegativeCacheHits() {
+		return negativeCacheHits.sum();
+	}
+
+	/**
+	 * Number of lookups which skipped the search of the URLs, as no URL provides the package
+	 */
+	public long getIndexSkips() {
+		return indexSkips.sum();
+	}
+
+	public String getStatistics() {
+		return "loaded=" + getLoadCount() +
+				", time=" + getLoadTime() + "ms" +
+				", misses=" + getMisses() +
+				", negativeCacheHits=" + getNegativeCacheHits() +
+				", indexSkips=" + getIndexSkips();
 	}
 
 	@Override
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Writes attachment files on a background thread, so that the disk latency is not
+ * on the critical path of the Test Case runner.
+ *
+ * Files are written in the order they are submitted. The number of pending files is bounded:
+ * if the writer falls behind, {@link #write(Path, byte[])} blocks until a file has been written.
+ * Errors are not reported on the writer thread, as the Test Result Collector is not thread safe,
+ * but returned by {@link #flush()}.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class AsyncAttachmentWriter {
+
+	private final ThreadPoolExecutor executor;
+	private final Semaphore capacity;
+	private final Queue<Map.Entry<Path, IOException>> errors = new ConcurrentLinkedQueue<>();
+
+	AsyncAttachmentWriter(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be greater than 0");
+		}
+		this.capacity = new Semaphore(capacity);
+		this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			final Thread thread = new Thread(r, "etf-sel-attachment-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queues a file for writing. Blocks if the maximum number of pending files is reached.
+	 *
+	 * @param target path of the file
+	 * @param content content of the file
+	 */
+	void write(final Path target, final byte[] content) {
+		capacity.acquireUninterruptibly();
+		try {
+			executor.execute(() -> {
+				try {
+					Files.write(target, content);
+				} catch (final IOException e) {
+					errors.add(new AbstractMap.SimpleImmutableEntry<>(target, e));
+				} finally {
+					capacity.release();
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			capacity.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits until all files queued so far have been written.
+	 *
+	 * The wait is not aborted by an interrupt, as the caller registers the files as
+	 * attachments afterwards. The interrupt status is restored.
+	 *
+	 * @return the files that could not be written since the last flush and their errors
+	 */
+	Map<Path, IOException> flush() {
+		final Future<?> barrier = executor.submit(() -> {});
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					barrier.get();
+					break;
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				} catch (final ExecutionException e) {
+					// not thrown by the barrier task
+					throw new IllegalStateException(e);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		final Map<Path, IOException> occurredErrors = new LinkedHashMap<>();
+		for (Map.Entry<Path, IOException> e = errors.poll(); e != null; e = errors.poll()) {
+			occurredErrors.put(e.getKey(), e.getValue());
+		}
+		return occurredErrors;
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A translatable message in the form
+ * {@code <etfTranslate what='TemplateId'><TOKEN>argument</TOKEN>...</etfTranslate>}
+ *
+ * The envelope and the token arguments are parsed iteratively in one pass.
+ * End tags are matched in place, without creating intermediate strings.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class EtfTranslateMessage {
+
+	private static final String START_TAG = "<etfTranslate ";
+	private static final String END_TAG = "</etfTranslate>";
+	private static final String EMPTY_ARGUMENT = "[ empty value (invalid response?) ]";
+
+	private final String translationTemplateId;
+	private final Map<String, String> tokenArguments;
+
+	private EtfTranslateMessage(final String translationTemplateId, final Map<String, String> tokenArguments) {
+		this.translationTemplateId = translationTemplateId;
+		this.tokenArguments = tokenArguments;
+	}
+
+	/**
+	 * Translation Template ID, always prefixed with "TR."
+	 *
+	 * @return Translation Template ID
+	 */
+	public String getTranslationTemplateId() {
+		return translationTemplateId;
+	}
+
+	/**
+	 * Token names mapped to their arguments, ordered by the token name
+	 *
+	 * @return token arguments, may be empty
+	 */
+	public Map<String, String> getTokenArguments() {
+		return tokenArguments;
+	}
+
+	/**
+	 * Returns true if the message is a manual test instruction
+	 *
+	 * @return true if the Translation Template ID starts with "TR.manual."
+	 */
+	public boolean isManual() {
+		return translationTemplateId.startsWith("TR.manual.");
+	}
+
+	/**
+	 * Parses a message which contains an etfTranslate envelope.
+	 *
+	 * @param message message to parse
+	 * @return parsed message or null if the message does not contain a valid etfTranslate envelope
+	 */
+	public static EtfTranslateMessage parse(final String message) {
+		final int startIndex = message.indexOf(START_TAG);
+		if (startIndex == -1) {
+			return null;
+		}
+		final int wi = message.indexOf("what='", startIndex + 14);
+		final boolean singleQ = wi > -1;
+		final int whatIndex = singleQ ? wi : message.indexOf("what=\"", startIndex + 14);
+		if (whatIndex == -1) {
+			return null;
+		}
+		final int endWhatIndex = message.indexOf(singleQ ? '\'' : '"', whatIndex + 6);
+		if (whatIndex >= endWhatIndex) {
+			return null;
+		}
+		final String translationTemplateId = message.startsWith("TR.", whatIndex + 6)
+				? message.substring(whatIndex + 6, endWhatIndex)
+				: "TR." + message.substring(whatIndex + 6, endWhatIndex);
+
+		final int endIndex = message.lastIndexOf(END_TAG);
+		if (endIndex <= 0) {
+			return new EtfTranslateMessage(translationTemplateId, Collections.emptyMap());
+		}
+		// Check that are no >s in what
+		final int messagesIndex = message.indexOf('>', startIndex + 1);
+		if (whatIndex < messagesIndex && messagesIndex < endIndex) {
+			final Map<String, String> tokenArguments = new TreeMap<>();
+			parseTokenArguments(message, messagesIndex + 1, endIndex, tokenArguments);
+			return new EtfTranslateMessage(translationTemplateId, tokenArguments);
+		}
+		return null;
+	}
+
+	/**
+	 * Existing arguments are appended (comma-separated)!
+	 *
+	 * Ignores: PASS and FAIL
+	 *
+	 * @param message message to parse
+	 * @param parseIndex index to start parsing from
+	 * @param maxIndex index of the etfTranslate end tag
+	 * @param tokenArguments map the token arguments are added to
+	 */
+	static void parseTokenArguments(final String message, final int parseIndex, final int maxIndex,
+			final Map<String, String> tokenArguments) {
+		int index = parseIndex;
+		while (true) {
+			final int startIndex = message.indexOf('<', index);
+			if (startIndex == -1) {
+				return;
+			}
+			final int closingTagSignIndex = message.indexOf('>', startIndex + 2);
+			if (closingTagSignIndex == -1 || message.charAt(closingTagSignIndex - 1) == '/') {
+				return;
+			}
+			final int firstAttributeInTag = message.indexOf(' ', startIndex + 2);
+			final int tokenNameEndIndex = firstAttributeInTag > startIndex && firstAttributeInTag < closingTagSignIndex
+					? firstAttributeInTag : closingTagSignIndex;
+			final int tokenLength = tokenNameEndIndex - startIndex - 1;
+			// Argument ends with the token
+			final int argumentEndIndex = indexOfEndTag(message, startIndex + 1, tokenLength, closingTagSignIndex);
+			final int nextIndex;
+			if (isIgnoredToken(message, startIndex + 1, tokenLength)) {
+				nextIndex = argumentEndIndex != -1 ? argumentEndIndex + tokenLength + 1 : closingTagSignIndex + 1;
+			} else if (tokenNameEndIndex < argumentEndIndex) {
+				final String token = message.substring(startIndex + 1, tokenNameEndIndex);
+				// Arguments begins after closing tag sign
+				final String argument = message.substring(closingTagSignIndex + 1, argumentEndIndex);
+				// Support listing, by appending an argument to a token that already exists
+				final String existingArgument = tokenArguments.get(token);
+				if (existingArgument != null) {
+					// there is already an existing argument. Append non null, unique argument
+					if (!argument.isEmpty() && !argument.equals(existingArgument)) {
+						tokenArguments.put(token, argument + ", " + existingArgument);
+					}
+				} else {
+					// Add non empty argument or write the string "[ empty value (invalid response?) ]"
+					tokenArguments.put(token, !argument.isEmpty() ? argument : EMPTY_ARGUMENT);
+				}
+				nextIndex = argumentEndIndex + tokenLength + 1;
+			} else {
+				return;
+			}
+			if (nextIndex + 14 >= maxIndex) {
+				return;
+			}
+			index = nextIndex;
+		}
+	}
+
+	private static boolean isIgnoredToken(final String message, final int tokenIndex, final int tokenLength) {
+		return tokenLength == 4 && (message.startsWith("PASS", tokenIndex) || message.startsWith("FAIL", tokenIndex));
+	}
+
+	/**
+	 * Same as {@code message.indexOf("</" + token + ">", fromIndex)}, without creating the end tag string
+	 */
+	private static int indexOfEndTag(final String message, final int tokenIndex, final int tokenLength,
+			final int fromIndex) {
+		for (int i = message.indexOf("</", fromIndex); i != -1; i = message.indexOf("</", i + 2)) {
+			final int tagEndIndex = i + 2 + tokenLength;
+			if (tagEndIndex < message.length() && message.charAt(tagEndIndex) == '>'
+					&& message.regionMatches(i + 2, message, tokenIndex, tokenLength)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -15,11 +15,16 @@
  */
 package de.interactive_instruments.etf.sel.mapping;
 
+import static de.interactive_instruments.etf.dal.dto.result.TestResultStatus.INTERNAL_ERROR;
+
 import java.util.Objects;
 
 import com.eviware.soapui.impl.wsdl.WsdlProject;
+import com.eviware.soapui.model.project.Project;
 import com.eviware.soapui.model.testsuite.*;
 
+import de.interactive_instruments.etf.sel.runner.DependencyOutcomeMemo;
+import de.interactive_instruments.etf.sel.runner.TestCaseRunRegistry;
 import de.interactive_instruments.etf.testdriver.TestResultCollector;
 
 /**
@@ -51,25 +56,87 @@ public class ProjectRunCollector implements ProjectRunListener {
 				collector = new DummyCollector();
 			}
 		}
-		collector.startTestTask(projectRunner.getProject().getId());
+		// Populated by the TestRunCollector, consulted by the Test Case Dependency steps
+		projectRunContext.setProperty(TestCaseRunRegistry.PROPERTY, new TestCaseRunRegistry());
+		if (DependencyOutcomeMemo.isRunScoped()) {
+			projectRunContext.setProperty(DependencyOutcomeMemo.PROPERTY, new DependencyOutcomeMemo());
+		}
+		beforeRun(projectRunner.getProject());
+	}
+
+	/**
+	 * Reports the start of a project which is run without a SoapUI project runner
+	 *
+	 * @param project the project
+	 */
+	public void beforeRun(final Project project) {
+		Objects.requireNonNull(collector, "Collector not initialized before project run").startTestTask(project.getId());
 	}
 
 	@Override
 	public void afterRun(final ProjectRunner projectRunner, final ProjectRunContext projectRunContext) {
-		Objects.requireNonNull(collector, "Collector not initialized after project run")
-				.end(projectRunner.getProject().getId());
+		afterRun(projectRunner.getProject());
+	}
+
+	/**
+	 * Reports the end of a project which is run without a SoapUI project runner
+	 *
+	 * @param project the project
+	 */
+	public void afterRun(final Project project) {
+		Objects.requireNonNull(collector, "Collector not initialized after project run").end(project.getId());
+	}
+
+	/**
+	 * Reports an error which aborted a project run without a SoapUI project runner
+	 * and ends the open Test Suite and the project with an internal error.
+	 *
+	 * @param project the project
+	 * @param testSuite the open Test Suite or null
+	 * @param e the error
+	 */
+	public void abortRun(final Project project, final TestSuite testSuite, final Throwable e) {
+		Objects.requireNonNull(collector, "Collector not initialized after project run").internalError(e);
+		if (testSuite != null) {
+			collector.end(testSuite.getId(), INTERNAL_ERROR.value());
+		}
+		collector.end(project.getId(), INTERNAL_ERROR.value());
 	}
 
 	@Override
 	public void beforeTestSuite(final ProjectRunner projectRunner, final ProjectRunContext projectRunContext,
 			final TestSuite testSuite) {
+		beforeTestSuite(testSuite);
+	}
+
+	/**
+	 * Reports the start of a Test Suite which is run without a SoapUI project runner
+	 *
+	 * @param testSuite the Test Suite
+	 */
+	public void beforeTestSuite(final TestSuite testSuite) {
 		Objects.requireNonNull(collector, "Collector not initialized before test suite run").startTestModule(testSuite.getId());
 	}
 
 	@Override
 	public void afterTestSuite(final ProjectRunner projectRunner, final ProjectRunContext projectRunContext,
 			final TestSuiteRunner testSuiteRunner) {
-		Objects.requireNonNull(collector, "Collector not initialized after test suite run")
-				.end(testSuiteRunner.getTestSuite().getId());
+		// Register Test Cases which have been run without a TestRunCollector
+		final TestCaseRunRegistry registry = TestCaseRunRegistry.get(projectRunContext);
+		if (registry != null) {
+			for (final TestCaseRunner testCaseRunner : testSuiteRunner.getResults()) {
+				registry.finished(testCaseRunner);
+			}
+		}
+		afterTestSuite(testSuiteRunner.getTestSuite());
+	}
+
+	/**
+	 * Reports the end of a Test Suite which is run without a SoapUI project runner
+	 *
+	 * @param testSuite the Test Suite
+	 */
+	public void afterTestSuite(final TestSuite testSuite) {
+		Objects.requireNonNull(collector, "Collector not initialized after test suite run").end(testSuite.getId());
 	}
 }
@@ -17,12 +17,20 @@ package de.interactive_instruments.etf.sel.mapping;
 
 import static de.interactive_instruments.etf.dal.dto.result.TestResultStatus.UNDEFINED;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import com.eviware.soapui.impl.support.AbstractHttpRequest;
 import com.eviware.soapui.impl.support.http.HttpRequestTestStep;
 import com.eviware.soapui.impl.wsdl.WsdlProject;
+import com.eviware.soapui.impl.wsdl.submit.transports.http.HttpResponse;
 import com.eviware.soapui.impl.wsdl.support.PathUtils;
 import com.eviware.soapui.impl.wsdl.teststeps.HttpTestRequest;
 import com.eviware.soapui.impl.wsdl.teststeps.HttpTestRequestStep;
@@ -40,6 +48,7 @@ import org.apache.commons.io.IOUtils;
 import de.interactive_instruments.IFile;
 import de.interactive_instruments.SUtils;
 import de.interactive_instruments.UriUtils;
+import de.interactive_instruments.etf.sel.runner.TestCaseRunRegistry;
 import de.interactive_instruments.etf.testdriver.TestResultCollector;
 import de.interactive_instruments.exceptions.ExcUtils;
 
@@ -52,6 +61,33 @@ public class TestRunCollector implements TestRunListener {
 	private TestResultCollector collector;
 	private IFile tmpDir;
 
+	// Write attachments on a background thread
+	private static final boolean ASYNC_ATTACHMENTS = Boolean.getBoolean("etf.sel.attachments.async");
+	// Maximum number of attachments that are queued before the Test Case runner is blocked
+	private static final int ASYNC_ATTACHMENTS_QUEUE_SIZE = Integer.getInteger("etf.sel.attachments.async.queue", 16);
+	private final AsyncAttachmentWriter attachmentWriter = ASYNC_ATTACHMENTS
+			? new AsyncAttachmentWriter(ASYNC_ATTACHMENTS_QUEUE_SIZE)
+			: null;
+	// Attachments of the current Test Step that are queued but not registered yet
+	private final List<PendingAttachment> pendingAttachments = new ArrayList<>();
+
+	private static final class PendingAttachment {
+		private final Path path;
+		private final String label;
+		private final String encoding;
+		private final String mimeType;
+		private final String type;
+
+		private PendingAttachment(final Path path, final String label, final String encoding, final String mimeType,
+				final String type) {
+			this.path = path;
+			this.label = label;
+			this.encoding = encoding;
+			this.mimeType = mimeType;
+			this.type = type;
+		}
+	}
+
 	/**
 	 * @see de.interactive_instruments.etf.dal.dto.result.TestResultStatus
 	 */
@@ -67,6 +103,10 @@ public class TestRunCollector implements TestRunListener {
 	private TestResultStatus testAssertionStatus = TestResultStatus.PASSED;
 	private TestResultStatus testStepStatus = TestResultStatus.PASSED;
 
+	private final TestRunMetrics metrics = TestRunMetrics.getInstance();
+	// Time spent in beforeStep() for the current Test Step
+	private long beforeStepNanos;
+
 	private void setManualOrError(final boolean manual) {
 		if (manual) {
 			testAssertionStatus = TestResultStatus.PASSED_MANUAL;
@@ -112,11 +152,17 @@ public class TestRunCollector implements TestRunListener {
 		}
 		testAssertionStatus = TestResultStatus.PASSED;
 		testStepStatus = TestResultStatus.PASSED;
+		final TestCaseRunRegistry registry = TestCaseRunRegistry.get(testCaseRunContext);
+		if (registry != null) {
+			registry.started(testCaseRunner);
+		}
 		collector.startTestCase(testCaseRunner.getTestCase().getId());
 	}
 
 	@Override
 	public void afterRun(final TestCaseRunner testCaseRunner, final TestCaseRunContext testCaseRunContext) {
+		// all attachments must be written and registered before the Test Step and the Test Case end
+		flushAttachments();
 		// Check if the collector is still in the writing test step state
 		if (collector.currentModelType() == 4) {
 			collector.error("Exception occurred in Test Step: " + testCaseRunner.getReason());
@@ -124,6 +170,11 @@ public class TestRunCollector implements TestRunListener {
 			collector.end(testCaseRunner.getRunContext().getCurrentStep().getId(), UNDEFINED.value());
 		}
 		collector.end(testCaseRunner.getTestCase().getId());
+		// notify waiting Test Case Dependency steps
+		final TestCaseRunRegistry registry = TestCaseRunRegistry.get(testCaseRunContext);
+		if (registry != null) {
+			registry.finished(testCaseRunner);
+		}
 	}
 
 	@Override
@@ -134,6 +185,7 @@ public class TestRunCollector implements TestRunListener {
 	@Override
 	public void beforeStep(final TestCaseRunner testCaseRunner, final TestCaseRunContext testCaseRunContext,
 			final TestStep testStep) {
+		final long start = System.nanoTime();
 		Objects.requireNonNull(collector, "Collector not initialized before test step").startTestStep(testStep.getId());
 
 		if (testStep instanceof HttpTestRequestStep || testStep instanceof RestTestRequestStep) {
@@ -146,63 +198,38 @@ public class TestRunCollector implements TestRunListener {
 				httpRequest.setMaxSize(2147483648L);
 			}
 		}
+		beforeStepNanos = System.nanoTime() - start;
 	}
 
 	/**
 	 * Returns true if message is a manual test instruction
 	 * Errors are passed to the logger of the collector
 	 */
-	private static boolean addMessage(final String message, final TestResultCollector collector, final int i) {
-		final int startIndex = message.indexOf("<etfTranslate ");
-		final int endIndex = message.lastIndexOf("</etfTranslate>");
-
-		if (startIndex != -1) {
-			final int wi = message.indexOf("what='", startIndex + 14);
-			final boolean singleQ = wi > -1;
-			final int whatIndex = singleQ ? wi : message.indexOf("what=\"", startIndex + 14);
-
-			if (whatIndex != -1) {
-				final int endWhatIndex = message.indexOf(singleQ ? "'" : "\"", whatIndex + 6);
-				if (whatIndex < endWhatIndex) {
-					final String t = message.substring(whatIndex + 6, endWhatIndex);
-					final String translationTemplateId = t.startsWith("TR.") ? t : "TR." + t;
-					final boolean manual = translationTemplateId.startsWith("TR.manual.");
-					if (endIndex > 0) {
-						// Check that are no >s in what
-						final int messagesIndex = message.indexOf(">", startIndex + 1);
-						if (whatIndex < messagesIndex && messagesIndex < endIndex) {
-							final Map<String, String> tokenArguments = new TreeMap<>();
-							parseRec(message, messagesIndex + 1, endIndex, tokenArguments);
-							if (!tokenArguments.isEmpty()) {
-								// if there is only one tokenArgument combination with an INFO token,
-								// change the template to TR.INFO
-								if (tokenArguments.size() == 1 && tokenArguments.containsKey("INFO")) {
-									// Add message with INFO message
-									collector.addMessage("TR.fallbackInfo", tokenArguments);
-									// Log Assertion info message
-									collector.info(tokenArguments.get("INFO"));
-								} else {
-									// Add message with token/arguments
-									collector.addMessage(translationTemplateId, tokenArguments);
-								}
-							} else {
-								// Add message without tokenArguments
-								collector.addMessage(translationTemplateId);
-							}
-							if (!manual) {
-								collector.error("Assertion failed with error '" + translationTemplateId + "'");
-							}
-							return manual;
-						}
-					} else {
-						collector.addMessage(translationTemplateId);
-						if (!manual) {
-							collector.error("Assertion failed with error '" + translationTemplateId + "'");
-						}
-						return manual;
-					}
+	static boolean addMessage(final String message, final TestResultCollector collector, final int i) {
+		final EtfTranslateMessage translateMessage = EtfTranslateMessage.parse(message);
+		if (translateMessage != null) {
+			final String translationTemplateId = translateMessage.getTranslationTemplateId();
+			final Map<String, String> tokenArguments = translateMessage.getTokenArguments();
+			if (!tokenArguments.isEmpty()) {
+				// if there is only one tokenArgument combination with an INFO token,
+				// change the template to TR.INFO
+				if (tokenArguments.size() == 1 && tokenArguments.containsKey("INFO")) {
+					// Add message with INFO message
+					collector.addMessage("TR.fallbackInfo", tokenArguments);
+					// Log Assertion info message
+					collector.info(tokenArguments.get("INFO"));
+				} else {
+					// Add message with token/arguments
+					collector.addMessage(translationTemplateId, tokenArguments);
 				}
+			} else {
+				// Add message without tokenArguments
+				collector.addMessage(translationTemplateId);
 			}
+			if (!translateMessage.isManual()) {
+				collector.error("Assertion failed with error '" + translationTemplateId + "'");
+			}
+			return translateMessage.isManual();
 		}
 
 		try {
@@ -222,59 +249,216 @@ public class TestRunCollector implements TestRunListener {
 	}
 
 	/**
-	 * Existing arguments are appended (comma-separated)!
+	 * Returns the result of the XQuery expression of a failed assertion.
+	 *
+	 * OK, this is very tricky: we need to call selectFromCurrent() to get the whole message
+	 * because XmlUnit shortens the output. But as this assertion maybe reused in the run
+	 * we need to reset the internal properties...
 	 *
-	 * Ignores: PASS and FAIL
+	 * The XQuery expression is run again against the current response.
 	 *
-	 * @param message
-	 * @param parseIndex
-	 * @param maxIndex
-	 * @param tokenArguments
+	 * @param xqueryAssertion failed XQuery assertion
+	 * @return result of the XQuery expression or null
 	 */
-	private static void parseRec(final String message, final int parseIndex, final int maxIndex,
-			final Map<String, String> tokenArguments) {
-		final int startIndex = message.indexOf("<", parseIndex);
-		if (startIndex != -1) {
-			final int closingTagSignIndex = message.indexOf(">", startIndex + 2);
-			if (closingTagSignIndex != -1 && message.charAt(closingTagSignIndex - 1) != '/') {
-				final int firstAttributeInTag = message.indexOf(" ", startIndex + 2);
-				final int tokenNameEndIndex = firstAttributeInTag > startIndex && firstAttributeInTag < closingTagSignIndex
-						? firstAttributeInTag : closingTagSignIndex;
-				final String token = message.substring(startIndex + 1, tokenNameEndIndex);
-				if (!SUtils.isNullOrEmpty(token) && !token.equals("PASS") && !token.equals("FAIL")) {
-					// Argument ends with the token
-					final int argumentEndIndex = message.indexOf("</" + token + ">", closingTagSignIndex);
-					if (tokenNameEndIndex < argumentEndIndex) {
-						// Arguments begins after closing tag sign
-						final String argument = message.substring(closingTagSignIndex + 1, argumentEndIndex);
-						// Support listing, by appending an argument to a token that already exists
-						final String existingArgument = tokenArguments.get(token);
-						if (existingArgument != null) {
-							// there is already an existing argument. Append non null, unique argument
-							if (!SUtils.isNullOrEmpty(argument) && !argument.equals(existingArgument)) {
-								tokenArguments.put(token, argument + ", " + existingArgument);
-							}
-						} else {
-							// Add non empty argument or write the string "[not found in response]"
-							if (!SUtils.isNullOrEmpty(argument)) {
-								tokenArguments.put(token, argument);
-							} else {
-								tokenArguments.put(token, "[ empty value (invalid response?) ]");
-							}
-						}
-						final int completeEndIndex = argumentEndIndex + token.length();
-						if (completeEndIndex + 15 < maxIndex) {
-							parseRec(message, completeEndIndex + 1, maxIndex, tokenArguments);
-						}
-					}
+	private static String selectFromCurrent(final XQueryContainsAssertion xqueryAssertion) {
+		final String expectedContent = xqueryAssertion.getExpectedContent();
+		try {
+			xqueryAssertion.selectFromCurrent();
+			return xqueryAssertion.getExpectedContent();
+		} finally {
+			xqueryAssertion.setExpectedContent(expectedContent);
+		}
+	}
+
+	/**
+	 * Hands over a dump file to the target path without copying its content, if possible.
+	 *
+	 * A hard link to the dump file is created, so the dump file itself stays untouched and can
+	 * still be accessed by SoapUI, Groovy Test Steps and re-runs. If linking is not possible
+	 * (i.e. the target is on another file system), the content is copied with
+	 * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * which avoids buffering the response in the heap.
+	 *
+	 * @param dumpFile dump file written by SoapUI
+	 * @param target path of the attachment
+	 * @throws IOException if the file could not be transferred
+	 */
+	private static void transferDumpFile(final Path dumpFile, final Path target) throws IOException {
+		// the same Test Step may be executed several times
+		Files.deleteIfExists(target);
+		try {
+			Files.createLink(target, dumpFile);
+			return;
+		} catch (final IOException | UnsupportedOperationException | SecurityException e) {
+			ExcUtils.suppress(e);
+		}
+		try (final FileChannel in = FileChannel.open(dumpFile, StandardOpenOption.READ);
+				final FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			final long size = in.size();
+			for (long position = 0; position < size;) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+	}
+
+	/**
+	 * Saves a response that has not been dumped to a file.
+	 *
+	 * The raw bytes of the response body are streamed to the collector, so neither a String
+	 * nor a re-encoded copy of the body is created. The content is only decoded to a String,
+	 * if the raw body is not available.
+	 *
+	 * @param response response or null
+	 */
+	private void saveResponse(final HttpResponse response) {
+		if (response == null) {
+			return;
+		}
+		final long start = System.nanoTime();
+		try {
+			final byte[] body = response.getRawResponseBody();
+			if (body != null) {
+				if (body.length == 0) {
+					return;
+				}
+				if (isAsync()) {
+					saveAttachmentAsync(body, "Service Response", charsetOf(response), mimeTypeOf(response),
+							"ServiceResponse");
+				} else {
+					collector.saveAttachment(new ByteArrayInputStream(body), "Service Response", null, "ServiceResponse");
+				}
+			} else {
+				final String contentAsString = response.getContentAsString();
+				if (SUtils.isNullOrEmpty(contentAsString)) {
+					return;
 				}
+				if (isAsync()) {
+					saveAttachmentAsync(contentAsString.getBytes(StandardCharsets.UTF_8), "Service Response",
+							"UTF-8", mimeTypeOf(response), "ServiceResponse");
+				} else {
+					collector.saveAttachment(IOUtils.toInputStream(contentAsString, "UTF-8"), "Service Response", null,
+							"ServiceResponse");
+				}
+			}
+		} catch (final IOException e) {
+			collector.internalError(e);
+		} finally {
+			metrics.recordPhase(TestRunMetrics.ATTACHMENTS, System.nanoTime() - start);
+		}
+	}
+
+	private static String mimeTypeOf(final HttpResponse response) {
+		final String contentType = response.getContentType();
+		if (SUtils.isNullOrEmpty(contentType)) {
+			return null;
+		}
+		final int parameterIndex = contentType.indexOf(';');
+		return parameterIndex != -1 ? contentType.substring(0, parameterIndex).trim() : contentType.trim();
+	}
+
+	/**
+	 * Returns the charset parameter of the Content-Type header or null if none is declared
+	 */
+	private static String charsetOf(final HttpResponse response) {
+		final String contentType = response.getContentType();
+		if (SUtils.isNullOrEmpty(contentType)) {
+			return null;
+		}
+		for (final String parameter : contentType.split(";")) {
+			final String p = parameter.trim();
+			if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+				final String charset = p.substring(8).replace("\"", "").replace("'", "").trim();
+				return charset.isEmpty() ? null : charset;
+			}
+		}
+		return null;
+	}
+
+	private boolean isAsync() {
+		return attachmentWriter != null && tmpDir != null;
+	}
+
+	/**
+	 * Saves a text attachment for the current Test Step
+	 *
+	 * @param content text content
+	 * @param label attachment label
+	 * @param mimeType mime type or null
+	 * @param type attachment type
+	 * @param stream save the content through the InputStream overload of the collector if the attachment is
+	 *        written synchronously
+	 * @throws IOException if the attachment could not be saved
+	 */
+	private void saveAttachment(final String content, final String label, final String mimeType, final String type,
+			final boolean stream) throws IOException {
+		final long start = System.nanoTime();
+		try {
+			if (isAsync()) {
+				saveAttachmentAsync(content.getBytes(StandardCharsets.UTF_8), label, "UTF-8", mimeType, type);
+			} else if (stream) {
+				collector.saveAttachment(IOUtils.toInputStream(content, "UTF-8"), label, mimeType, type);
+			} else {
+				collector.saveAttachment(content, label, mimeType, type);
 			}
+		} finally {
+			metrics.recordPhase(TestRunMetrics.ATTACHMENTS, System.nanoTime() - start);
+		}
+	}
+
+	private String expand(final HttpRequestTestStep testRequest, final String content) {
+		final long start = System.nanoTime();
+		try {
+			return PropertyExpander.expandProperties(testRequest, content);
+		} finally {
+			metrics.recordPhase(TestRunMetrics.PROPERTY_EXPANSION, System.nanoTime() - start);
 		}
 	}
 
+	/**
+	 * Queues the file for writing. The attachment is registered for the current Test Step by
+	 * {@link #flushAttachments()}, after the file has been written.
+	 *
+	 * The mime type is not detected by the collector. Text is assumed if it is unknown.
+	 *
+	 * @param encoding encoding of the content or null if it is unknown or binary
+	 */
+	private void saveAttachmentAsync(final byte[] content, final String label, final String encoding,
+			final String mimeType, final String type) {
+		final Path path = Paths.get(tmpDir.getPath(), "attachment-" + UUID.randomUUID().toString());
+		attachmentWriter.write(path, content);
+		pendingAttachments.add(new PendingAttachment(path, label, encoding,
+				mimeType != null ? mimeType : "text/plain", type));
+	}
+
+	/**
+	 * Waits until the queued files have been written and registers them as attachments of the
+	 * current Test Step. Files that could not be written are reported as internal errors.
+	 */
+	private void flushAttachments() {
+		if (attachmentWriter == null) {
+			return;
+		}
+		final Map<Path, IOException> errors = attachmentWriter.flush();
+		for (final PendingAttachment attachment : pendingAttachments) {
+			final IOException writeError = errors.get(attachment.path);
+			if (writeError != null) {
+				collector.internalError(writeError);
+				continue;
+			}
+			try {
+				collector.markAttachment(attachment.path.getFileName().toString(), attachment.label,
+						attachment.encoding, attachment.mimeType, attachment.type);
+			} catch (final IOException e) {
+				collector.internalError(e);
+			}
+		}
+		pendingAttachments.clear();
+	}
+
 	@Override
 	public void afterStep(final TestCaseRunner testCaseRunner, final TestCaseRunContext testCaseRunContext,
 			final TestStepResult testStepResult) {
+		final long start = System.nanoTime();
 		Objects.requireNonNull(collector, "Collector not initialized after test step");
 		testStepStatus = TestResultStatus.PASSED;
 
@@ -294,10 +478,10 @@ public class TestRunCollector implements TestRunListener {
 			final String endpoint;
 
 			if (testRequest.hasProperty("Endpoint")) {
-				endpoint = UriUtils.withoutQueryParameters(PropertyExpander.expandProperties(testRequest,
+				endpoint = UriUtils.withoutQueryParameters(expand(testRequest,
 						testRequest.getProperty("Endpoint").getValue()));
 				try {
-					collector.saveAttachment(endpoint, "Endpoint", "text/plain", "ServiceEndpoint");
+					saveAttachment(endpoint, "Endpoint", "text/plain", "ServiceEndpoint", false);
 				} catch (IOException e) {
 					collector.internalError(e);
 				}
@@ -309,32 +493,22 @@ public class TestRunCollector implements TestRunListener {
 				if (httpRequest.getDumpFile() != null) {
 					final IFile file = new IFile(PathUtils.resolveResourcePath(httpRequest.getDumpFile(), httpRequest));
 					if (file.exists() && file.length() > 0) {
+						final long copyStart = System.nanoTime();
 						try {
-							final IFile copied = file.copyTo(
+							final Path response = Paths.get(
 									tmpDir.secureExpandPathDown("response-" + testStepResult.getTestStep().getId()).toString());
-							collector.markAttachment(copied.getName(), "Service Response", "UTF-8", null, "ServiceResponse");
+							transferDumpFile(file.toPath(), response);
+							collector.markAttachment(response.getFileName().toString(), "Service Response", "UTF-8", null,
+									"ServiceResponse");
 						} catch (IOException e) {
 							collector.internalError(e);
 						}
-					} else if (httpRequest.getResponse() != null
-							&& !SUtils.isNullOrEmpty(httpRequest.getResponse().getContentAsString())) {
-						// collector.getLogger().info("Received empty response");
-						try {
-							collector.saveAttachment(
-									IOUtils.toInputStream(httpRequest.getResponse().getContentAsString(), "UTF-8"),
-									"Service Response", null, "ServiceResponse");
-						} catch (final IOException e) {
-							collector.internalError(e);
-						}
-					}
-				} else if (httpRequest.getResponse() != null
-						&& !SUtils.isNullOrEmpty(httpRequest.getResponse().getContentAsString())) {
-					try {
-						collector.saveAttachment(IOUtils.toInputStream(httpRequest.getResponse().getContentAsString(), "UTF-8"),
-								"Service Response", null, "ServiceResponse");
-					} catch (final IOException e) {
-						collector.internalError(e);
+						metrics.recordPhase(TestRunMetrics.DUMP_FILE_COPY, System.nanoTime() - copyStart);
+					} else {
+						saveResponse(httpRequest.getResponse());
 					}
+				} else {
+					saveResponse(httpRequest.getResponse());
 				}
 			}
 
@@ -346,19 +520,18 @@ public class TestRunCollector implements TestRunListener {
 					// POST
 					final String endpointText = !SUtils.isNullOrEmpty(endpoint) ? "Endpoint: "
 							+ SUtils.ENDL
-							+ PropertyExpander.expandProperties(testRequest, testRequest.getPropertyValue("Endpoint"))
+							+ expand(testRequest, testRequest.getPropertyValue("Endpoint"))
 							+ SUtils.ENDL : "";
-					final String addRequestInfo = PropertyExpander.expandProperties(testRequest, "<!-- " + SUtils.ENDL +
+					final String addRequestInfo = expand(testRequest, "<!-- " + SUtils.ENDL +
 							endpointText +
 							"RequestHeaders: " + SUtils.ENDL +
 							testRequest.getHttpRequest().getRequestHeaders().toString() + SUtils.ENDL +
 							"-->" + SUtils.ENDL);
 
-					final String expandedProperties = PropertyExpander.expandProperties(testRequest,
+					final String expandedProperties = expand(testRequest,
 							addRequestInfo + testRequest.getProperty("Request").getValue());
 					try {
-						collector.saveAttachment(IOUtils.toInputStream(expandedProperties, "UTF-8"),
-								"Request Parameter", null, "PostData");
+						saveAttachment(expandedProperties, "Request Parameter", null, "PostData", true);
 					} catch (final IOException e) {
 						ExcUtils.suppress(e);
 					}
@@ -369,7 +542,7 @@ public class TestRunCollector implements TestRunListener {
 					for (final TestProperty testProperty : propertyList) {
 						if (!testProperty.getName().startsWith("Transfer_Properties")) {
 							parameterMap.put(testProperty.getName(),
-									PropertyExpander.expandProperties(testRequest, testProperty.getValue()));
+									expand(testRequest, testProperty.getValue()));
 						}
 					}
 
@@ -383,9 +556,8 @@ public class TestRunCollector implements TestRunListener {
 
 					if (!SUtils.isNullOrEmpty(query)) {
 						try {
-							collector.saveAttachment(
-									PropertyExpander.expandProperties(testRequest, query),
-									"Request Parameter", null, "GetParameter");
+							saveAttachment(expand(testRequest, query),
+									"Request Parameter", null, "GetParameter", false);
 						} catch (final IOException e) {
 							ExcUtils.suppress(e);
 						}
@@ -398,34 +570,29 @@ public class TestRunCollector implements TestRunListener {
 			final List<TestAssertion> assertionList = testRequest.getTestRequest().getAssertionList();
 			for (int i1 = 0, assertionListSize = assertionList.size(); i1 < assertionListSize; i1++) {
 				final TestAssertion assertion = assertionList.get(i1);
+				final long assertionStart = System.nanoTime();
 				collector.startTestAssertion(assertion.getId());
 				testAssertionStatus = TestResultStatus.PASSED;
-				if (assertion.getErrors() != null) {
+				final AssertionError[] errors = assertion.getErrors();
+				if (errors != null && errors.length > 0) {
 					int i = 1;
-					final AssertionError[] errors = assertion.getErrors();
+					// XmlUnit shortens the result in the error messages, the XQuery is run again to get
+					// the whole result. A failed XQuery assertion usually reports a single error.
+					final String translation = assertion instanceof XQueryContainsAssertion
+							? selectFromCurrent((XQueryContainsAssertion) assertion)
+							: null;
+					final boolean translatable = translation != null && translation.contains("<etfTranslate");
 					for (int i2 = 0, errorsLength = errors.length; i2 < errorsLength; i2++) {
 						final AssertionError error = errors[i2];
-						if (assertion instanceof XQueryContainsAssertion) {
-							final XQueryContainsAssertion xqueryAssertion = (XQueryContainsAssertion) assertion;
-							// OK, this is very tricky:
-							// we need to call selectFromCurrent() to get the whole message
-							// because XmlUnit shortens the output. But as this assertion maybe reused in the run
-							// we need to reset the internal properties...
-							final String expectedContent = xqueryAssertion.getExpectedContent();
-							xqueryAssertion.selectFromCurrent();
-							final String translation = xqueryAssertion.getExpectedContent();
-							if (translation.contains("<etfTranslate")) {
-								setManualOrError(addMessage(translation, collector, i++));
-							} else {
-								setManualOrError(addMessage(error.getMessage(), collector, i++));
-							}
-							xqueryAssertion.setExpectedContent(expectedContent);
+						if (translatable) {
+							setManualOrError(addMessage(translation, collector, i++));
 						} else {
 							setManualOrError(addMessage(error.getMessage(), collector, i++));
 						}
 					}
 				}
 				collector.end(assertion.getId(), testAssertionStatus.value);
+				metrics.recordTestAssertion(assertion.getClass().getSimpleName(), System.nanoTime() - assertionStart);
 			}
 		} else {
 			if (testStepResult.getStatus() == TestStepResult.TestStepStatus.FAILED) {
@@ -441,6 +608,7 @@ public class TestRunCollector implements TestRunListener {
 			// Add messages
 			final String[] messages = testStepResult.getMessages();
 			if (messages != null) {
+				final long messagesStart = System.nanoTime();
 				for (int i = 0, messagesLength = messages.length; i < messagesLength; i++) {
 					final String message = messages[i];
 					try {
@@ -454,9 +622,11 @@ public class TestRunCollector implements TestRunListener {
 						collector.internalError(e);
 					}
 				}
+				metrics.recordPhase(TestRunMetrics.MESSAGES, System.nanoTime() - messagesStart);
 			}
 		}
 
+		flushAttachments();
 		if (status == -1) {
 			// auto determine
 			collector.end(testStepResult.getTestStep().getId(), testStepResult.getTimeStamp() + testStepResult.getTimeTaken());
@@ -464,5 +634,8 @@ public class TestRunCollector implements TestRunListener {
 			collector.end(testStepResult.getTestStep().getId(), status,
 					testStepResult.getTimeStamp() + testStepResult.getTimeTaken());
 		}
+		metrics.recordTestStep(testStepResult.getTestStep().getClass().getSimpleName(), testStepResult.getTimeTaken(),
+				beforeStepNanos + System.nanoTime() - start);
+		beforeStepNanos = 0;
 	}
 }
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * Timings of the Test Steps and of the work the TestRunCollector does for them.
+ *
+ * For each Test Step type the time taken as reported by SoapUI, which includes
+ * the HTTP exchange, and the time spent in the TestRunCollector are recorded.
+ * The time spent in the TestRunCollector is further broken down by Test
+ * Assertion type and by phase: attachment writing, property expansion, dump
+ * file copying and message reporting. This shows whether slow runs are caused
+ * by the service under test or by the validation.
+ *
+ * The metrics are available as MXBean
+ * {@code de.interactive_instruments.etf.sel:type=TestRunMetrics} and are
+ * written to the log every {@code etf.sel.metrics.log.interval} seconds
+ * (default 300, 0 disables the log line) if Test Steps have been run since.
+ * The recording is disabled by default and enabled with {@code etf.sel.metrics=true}.
+ *
+ * An MXBean which has been registered by a previous class loader of the plugin
+ * is shut down and replaced. The MXBean is unregistered and the periodic log
+ * line is stopped on JVM shutdown or with {@link #shutdown()}.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class TestRunMetrics implements TestRunMetricsMXBean {
+
+	public static final String OBJECT_NAME = "de.interactive_instruments.etf.sel:type=TestRunMetrics";
+
+	static final String ATTACHMENTS = "attachments";
+	static final String PROPERTY_EXPANSION = "propertyExpansion";
+	static final String DUMP_FILE_COPY = "dumpFileCopy";
+	static final String MESSAGES = "messages";
+
+	private static final boolean ENABLED = Boolean.getBoolean("etf.sel.metrics");
+	private static final long LOG_INTERVAL = Long.getLong("etf.sel.metrics.log.interval", 300);
+
+	private static final TestRunMetrics instance = new TestRunMetrics();
+
+	private final ConcurrentMap<String, TimingHistogram> testStepTimings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, TimingHistogram> collectorOverheads = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, TimingHistogram> testAssertionTimings = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, TimingHistogram> phaseTimings = new ConcurrentHashMap<>();
+	// Test Step count at the time of the last log line
+	private final AtomicLong loggedTestStepCount = new AtomicLong();
+
+	// guarded by this
+	private ScheduledExecutorService logger;
+	private Thread shutdownHook;
+	private boolean registered;
+
+	static {
+		instance.start();
+	}
+
+	private TestRunMetrics() {}
+
+	private synchronized void start() {
+		try {
+			final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(OBJECT_NAME);
+			if (mBeanServer.isRegistered(name)) {
+				// registered by a previous class loader of the plugin, which would otherwise stay pinned
+				try {
+					mBeanServer.invoke(name, "shutdown", null, null);
+				} catch (final JMException e) {
+					Utils.logError(e, "Could not shut down the previous " + OBJECT_NAME);
+				}
+				if (mBeanServer.isRegistered(name)) {
+					mBeanServer.unregisterMBean(name);
+				}
+			}
+			if (ENABLED) {
+				mBeanServer.registerMBean(this, name);
+				registered = true;
+			}
+		} catch (final JMException | SecurityException e) {
+			Utils.logError(e, "Could not register " + OBJECT_NAME);
+		}
+		if (ENABLED) {
+			if (LOG_INTERVAL > 0) {
+				logger = Executors.newSingleThreadScheduledExecutor(r -> {
+					final Thread thread = new Thread(r, "etf-sel-metrics");
+					thread.setDaemon(true);
+					return thread;
+				});
+				logger.scheduleAtFixedRate(this::logSummary, LOG_INTERVAL, LOG_INTERVAL, TimeUnit.SECONDS);
+			}
+			shutdownHook = new Thread(this::shutdown, "etf-sel-metrics-shutdown");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		}
+	}
+
+	public static TestRunMetrics getInstance() {
+		return instance;
+	}
+
+	private static TimingHistogram histogram(final ConcurrentMap<String, TimingHistogram> histograms,
+			final String name) {
+		final TimingHistogram histogram = histograms.get(name);
+		return histogram != null ? histogram : histograms.computeIfAbsent(name, n -> new TimingHistogram());
+	}
+
+	/**
+	 * @param testStepType type of the Test Step
+	 * @param timeTaken time taken by the Test Step as reported by SoapUI, in milliseconds
+	 * @param collectorNanos time spent in the TestRunCollector for the Test Step
+	 */
+	void recordTestStep(final String testStepType, final long timeTaken, final long collectorNanos) {
+		if (ENABLED) {
+			histogram(testStepTimings, testStepType).record(TimeUnit.MILLISECONDS.toNanos(timeTaken));
+			histogram(collectorOverheads, testStepType).record(collectorNanos);
+		}
+	}
+
+	void recordTestAssertion(final String testAssertionType, final long nanos) {
+		if (ENABLED) {
+			histogram(testAssertionTimings, testAssertionType).record(nanos);
+		}
+	}
+
+	void recordPhase(final String phase, final long nanos) {
+		if (ENABLED) {
+			histogram(phaseTimings, phase).record(nanos);
+		}
+	}
+
+	private static long sum(final Map<String, TimingHistogram> histograms) {
+		long count = 0;
+		for (final TimingHistogram histogram : histograms.values()) {
+			count += histogram.getCount();
+		}
+		return count;
+	}
+
+	private static long totalMillis(final Map<String, TimingHistogram> histograms) {
+		long micros = 0;
+		for (final TimingHistogram histogram : histograms.values()) {
+			micros += histogram.getTotalMicros();
+		}
+		return micros / 1000;
+	}
+
+	private static String[] describe(final Map<String, TimingHistogram> histograms) {
+		final List<String> descriptions = new ArrayList<>();
+		for (final Map.Entry<String, TimingHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			descriptions.add(entry.getValue().describe(entry.getKey()));
+		}
+		return descriptions.toArray(new String[0]);
+	}
+
+	@Override
+	public long getTestStepCount() {
+		return sum(testStepTimings);
+	}
+
+	@Override
+	public long getTestStepTime() {
+		return totalMillis(testStepTimings);
+	}
+
+	@Override
+	public long getCollectorTime() {
+		return totalMillis(collectorOverheads);
+	}
+
+	@Override
+	public String[] getTestStepTimings() {
+		return describe(testStepTimings);
+	}
+
+	@Override
+	public String[] getCollectorOverheads() {
+		return describe(collectorOverheads);
+	}
+
+	@Override
+	public String[] getTestAssertionTimings() {
+		return describe(testAssertionTimings);
+	}
+
+	@Override
+	public String[] getPhaseTimings() {
+		return describe(phaseTimings);
+	}
+
+	@Override
+	public String getSummary() {
+		final long testStepTime = getTestStepTime();
+		final long collectorTime = getCollectorTime();
+		final StringBuilder builder = new StringBuilder("Test Run metrics: ");
+		builder.append(getTestStepCount()).append(" Test Steps took ").append(testStepTime)
+				.append(" ms, the collector added ").append(collectorTime).append(" ms");
+		if (testStepTime > 0) {
+			builder.append(" (").append(collectorTime * 100 / testStepTime).append('%').append(')');
+		}
+		for (final Map.Entry<String, TimingHistogram> entry : new TreeMap<>(collectorOverheads).entrySet()) {
+			final TimingHistogram testStepTiming = testStepTimings.get(entry.getKey());
+			builder.append("; ").append(entry.getKey()).append(" mean=")
+					.append(TimingHistogram.millis(testStepTiming != null ? testStepTiming.getMeanMicros() : 0))
+					.append("ms overhead=").append(TimingHistogram.millis(entry.getValue().getMeanMicros()))
+					.append("ms");
+		}
+		for (final Map.Entry<String, TimingHistogram> entry : new TreeMap<>(phaseTimings).entrySet()) {
+			builder.append("; ").append(entry.getKey()).append('=')
+					.append(entry.getValue().getTotalMicros() / 1000).append("ms");
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public void reset() {
+		testStepTimings.clear();
+		collectorOverheads.clear();
+		testAssertionTimings.clear();
+		phaseTimings.clear();
+		loggedTestStepCount.set(0);
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (logger != null) {
+			logger.shutdownNow();
+			logger = null;
+		}
+		if (registered) {
+			registered = false;
+			try {
+				final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				final ObjectName name = new ObjectName(OBJECT_NAME);
+				if (mBeanServer.isRegistered(name)) {
+					mBeanServer.unregisterMBean(name);
+				}
+			} catch (final JMException | SecurityException e) {
+				Utils.logError(e, "Could not unregister " + OBJECT_NAME);
+			}
+		}
+		if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (final IllegalStateException ignore) {
+				// JVM shutdown in progress
+			}
+		}
+		shutdownHook = null;
+	}
+
+	private void logSummary() {
+		final long testStepCount = getTestStepCount();
+		if (loggedTestStepCount.getAndSet(testStepCount) != testStepCount) {
+			Utils.log(getSummary());
+		}
+	}
+}
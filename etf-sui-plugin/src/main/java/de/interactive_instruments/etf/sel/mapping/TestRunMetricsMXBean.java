@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+/**
+ * JMX view of the Test Step and Test Assertion timings
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public interface TestRunMetricsMXBean {
+
+	/**
+	 * Number of Test Steps which have been recorded
+	 */
+	long getTestStepCount();
+
+	/**
+	 * Time taken by the Test Steps as reported by SoapUI, including the HTTP exchange, in milliseconds
+	 */
+	long getTestStepTime();
+
+	/**
+	 * Time spent in the TestRunCollector on top of the Test Steps, in milliseconds
+	 */
+	long getCollectorTime();
+
+	/**
+	 * Histograms of the time taken by the Test Steps, per Test Step type
+	 */
+	String[] getTestStepTimings();
+
+	/**
+	 * Histograms of the time spent in the TestRunCollector for each Test Step, per Test Step type
+	 */
+	String[] getCollectorOverheads();
+
+	/**
+	 * Histograms of the time spent in the TestRunCollector to evaluate and report
+	 * the results of the Test Assertions, per Test Assertion type
+	 */
+	String[] getTestAssertionTimings();
+
+	/**
+	 * Histograms of the time spent in attachment writing, property expansion,
+	 * dump file copying and message reporting
+	 */
+	String[] getPhaseTimings();
+
+	/**
+	 * One line summary, as written to the log
+	 */
+	String getSummary();
+
+	/**
+	 * Clears all recorded timings
+	 */
+	void reset();
+
+	/**
+	 * Stops the periodic log line and unregisters the MXBean. Called on JVM
+	 * shutdown and by the plugin class loader which replaces this instance.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations.
+ *
+ * The durations are counted in buckets of powers of two microseconds, so
+ * percentiles are reported with the upper bound of their bucket, at most
+ * twice the actual value.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class TimingHistogram {
+
+	// in microseconds, bucket 0: 0, bucket n: [2^(n-1), 2^n), the last bucket is open
+	private static final int BUCKETS = 42;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+	void record(final long nanos) {
+		final long micros = Math.max(0, nanos / 1000);
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulate(micros);
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getTotalMicros() {
+		return totalMicros.sum();
+	}
+
+	long getMeanMicros() {
+		final long c = count.sum();
+		return c > 0 ? totalMicros.sum() / c : 0;
+	}
+
+	/**
+	 * @param percentile between 0 and 1
+	 * @return upper bound of the percentile in microseconds
+	 */
+	long getPercentileMicros(final double percentile) {
+		final long max = maxMicros.get();
+		long remaining = (long) Math.ceil(count.sum() * percentile);
+		for (int i = 0; i < BUCKETS; i++) {
+			remaining -= buckets.get(i);
+			if (remaining <= 0) {
+				return i == 0 ? 0 : i == BUCKETS - 1 ? max : Math.min(max, (1L << i) - 1);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param name name of the measured operation
+	 * @return count, mean, percentiles and maximum in milliseconds
+	 */
+	String describe(final String name) {
+		return name + " count=" + getCount()
+				+ " mean=" + millis(getMeanMicros())
+				+ " p50=" + millis(getPercentileMicros(0.5))
+				+ " p90=" + millis(getPercentileMicros(0.9))
+				+ " p99=" + millis(getPercentileMicros(0.99))
+				+ " max=" + millis(maxMicros.get()) + "ms";
+	}
+
+	static String millis(final long micros) {
+		return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+	}
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.runner;
+
+import static de.interactive_instruments.etf.dal.dto.result.TestResultStatus.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Function;
+
+import org.apache.commons.io.IOUtils;
+
+import de.interactive_instruments.IFile;
+import de.interactive_instruments.etf.dal.dto.result.TestResultStatus;
+import de.interactive_instruments.etf.testdriver.TestResultCollector;
+import de.interactive_instruments.etf.testdriver.TestRunLogger;
+import de.interactive_instruments.etf.testdriver.TestTaskEndListener;
+
+/**
+ * Records the results of one Test Case, so that they can be passed to the
+ * Test Result Collector later in the order of the project.
+ *
+ * The Test Result Collector is not thread safe and expects the results in
+ * the order of the test model. Test Cases which run in parallel therefore
+ * write into their own buffer. The buffer is replayed on the thread that owns
+ * the collector, after the Test Case has finished.
+ *
+ * Streamed attachments are written to the temporary directory of the
+ * collector until they are replayed. Status queries for other Test Cases are
+ * answered with the results of the Test Cases which have already finished.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+final class BufferedTestResultCollector implements TestResultCollector {
+
+	// Test model types, as returned by currentModelType()
+	private static final int TEST_CASE = 3;
+	private static final int TEST_STEP = 4;
+	private static final int TEST_ASSERTION = 5;
+
+	private final static String BUFFERED_ID = "00000000-0000-0000-C000-000000000046";
+
+	@FunctionalInterface
+	private interface Event {
+		void replay(final TestResultCollector collector) throws IOException;
+	}
+
+	private static final class Item {
+		private final String id;
+		private final int type;
+
+		private Item(final String id, final int type) {
+			this.id = id;
+			this.type = type;
+		}
+	}
+
+	private final TestResultCollector collector;
+	private final Function<String, TestResultStatus> finishedTestCaseStatus;
+	private final List<Event> events = new ArrayList<>();
+	// Test model items which have been started but not ended
+	private final Deque<Item> openItems = new ArrayDeque<>();
+	private final List<File> bufferFiles = new ArrayList<>();
+
+	/**
+	 * @param collector the collector the events are replayed to
+	 * @param finishedTestCaseStatus status of a finished Test Case by its ID, or null if the Test Case has not finished
+	 */
+	BufferedTestResultCollector(final TestResultCollector collector,
+			final Function<String, TestResultStatus> finishedTestCaseStatus) {
+		this.collector = collector;
+		this.finishedTestCaseStatus = finishedTestCaseStatus;
+	}
+
+	/**
+	 * Passes all recorded events to the collector and deletes the buffered attachments
+	 *
+	 * @param target collector
+	 */
+	void replay(final TestResultCollector target) {
+		try {
+			for (final Event event : events) {
+				try {
+					event.replay(target);
+				} catch (final IOException e) {
+					target.internalError(e);
+				}
+			}
+		} finally {
+			events.clear();
+			for (final File bufferFile : bufferFiles) {
+				bufferFile.delete();
+			}
+			bufferFiles.clear();
+		}
+	}
+
+	private void record(final Event event) {
+		events.add(event);
+	}
+
+	private String start(final String id, final int type) {
+		openItems.push(new Item(id, type));
+		return BUFFERED_ID;
+	}
+
+	private void endItem(final String id) {
+		for (final Iterator<Item> it = openItems.iterator(); it.hasNext();) {
+			if (it.next().id.equals(id)) {
+				it.remove();
+				return;
+			}
+		}
+	}
+
+	private File newBufferFile() throws IOException {
+		final File tempDir = collector.getTempDir();
+		final File bufferFile = tempDir != null ? File.createTempFile("buffered-", null, tempDir)
+				: File.createTempFile("etf-sel-buffered-", null);
+		bufferFiles.add(bufferFile);
+		return bufferFile;
+	}
+
+	// Immutable properties of the Test Run, read from the collector
+
+	@Override
+	public IFile getAttachmentDir() {
+		return collector.getAttachmentDir();
+	}
+
+	@Override
+	public IFile getResultFile() {
+		return collector.getResultFile();
+	}
+
+	@Override
+	public String getTestTaskResultId() {
+		return collector.getTestTaskResultId();
+	}
+
+	@Override
+	public File getTempDir() {
+		return collector.getTempDir();
+	}
+
+	@Override
+	public boolean isErrorLimitExceeded() {
+		return collector.isErrorLimitExceeded();
+	}
+
+	@Override
+	public TestRunLogger getLogger() {
+		return collector.getLogger();
+	}
+
+	// Status queries
+
+	@Override
+	public TestResultStatus status(final String testModelItemId) throws IllegalArgumentException {
+		final TestResultStatus status = finishedTestCaseStatus.apply(testModelItemId);
+		return status != null ? status : UNDEFINED;
+	}
+
+	@Override
+	public boolean statusEqualsAny(final String testModelItemId, final String... testResultStatus)
+			throws IllegalArgumentException {
+		final String status = status(testModelItemId).toString();
+		for (final String expected : testResultStatus) {
+			if (status.equals(expected)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean endWithSkippedIfTestCasesFailed(final String... testCaseIds)
+			throws IllegalArgumentException, IllegalStateException {
+		for (final String testCaseId : testCaseIds) {
+			final TestResultStatus status = status(testCaseId);
+			if (status == FAILED || status == SKIPPED) {
+				final Item current = openItems.peek();
+				if (current == null) {
+					throw new IllegalStateException("No test model item to end");
+				}
+				end(current.id, SKIPPED.value(), System.currentTimeMillis());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int currentModelType() {
+		final Item current = openItems.peek();
+		return current != null ? current.type : -1;
+	}
+
+	// Recorded events
+
+	@Override
+	public String startTestTask(final String testModelItemId, final long startTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		throw new IllegalStateException("The Test Task is started by the runner");
+	}
+
+	@Override
+	public String startTestModule(final String testModelItemId, final long startTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		throw new IllegalStateException("The Test Module is started by the runner");
+	}
+
+	@Override
+	public String startTestCase(final String testModelItemId, final long startTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		record(c -> c.startTestCase(testModelItemId, startTimestamp));
+		return start(testModelItemId, TEST_CASE);
+	}
+
+	@Override
+	public String startTestStep(final String testModelItemId, final long startTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		record(c -> c.startTestStep(testModelItemId, startTimestamp));
+		return start(testModelItemId, TEST_STEP);
+	}
+
+	@Override
+	public String startTestAssertion(final String testModelItemId, final long startTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		record(c -> c.startTestAssertion(testModelItemId, startTimestamp));
+		return start(testModelItemId, TEST_ASSERTION);
+	}
+
+	@Override
+	public String end(final String testModelItemId, final int status, final long stopTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		record(c -> c.end(testModelItemId, status, stopTimestamp));
+		endItem(testModelItemId);
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public String end(final String testModelItemId, final long stopTimestamp)
+			throws IllegalArgumentException, IllegalStateException {
+		record(c -> c.end(testModelItemId, stopTimestamp));
+		endItem(testModelItemId);
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public void addMessage(final String translationTemplateId) {
+		record(c -> c.addMessage(translationTemplateId));
+	}
+
+	@Override
+	public void addMessage(final String translationTemplateId, final Map<String, String> tokenValuePairs) {
+		final Map<String, String> copy = new HashMap<>(tokenValuePairs);
+		record(c -> c.addMessage(translationTemplateId, copy));
+	}
+
+	@Override
+	public void addMessage(final String translationTemplateId, final String... tokensAndValues) {
+		final String[] copy = tokensAndValues.clone();
+		record(c -> c.addMessage(translationTemplateId, copy));
+	}
+
+	@Override
+	public String markAttachment(final String fileName, final String label, final String encoding,
+			final String mimeType, final String type) throws IOException {
+		record(c -> c.markAttachment(fileName, label, encoding, mimeType, type));
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public String saveAttachment(final Reader reader, final String label, final String mimeType, final String type)
+			throws IOException {
+		final File bufferFile = newBufferFile();
+		try (final Writer writer = new OutputStreamWriter(new FileOutputStream(bufferFile), "UTF-8")) {
+			IOUtils.copy(reader, writer);
+		}
+		record(c -> {
+			try (final Reader in = new InputStreamReader(new FileInputStream(bufferFile), "UTF-8")) {
+				c.saveAttachment(in, label, mimeType, type);
+			}
+		});
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public String saveAttachment(final InputStream inputStream, final String label, final String mimeType,
+			final String type) throws IOException {
+		final File bufferFile = newBufferFile();
+		Files.copy(inputStream, bufferFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		record(c -> {
+			try (final InputStream in = new FileInputStream(bufferFile)) {
+				c.saveAttachment(in, label, mimeType, type);
+			}
+		});
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public String saveAttachment(final String content, final String label, final String mimeType, final String type)
+			throws IOException {
+		record(c -> c.saveAttachment(content, label, mimeType, type));
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public void internalError(final String translationTemplateId, final Map<String, String> tokenValuePairs,
+			final Throwable e) {
+		final Map<String, String> copy = tokenValuePairs != null ? new HashMap<>(tokenValuePairs) : null;
+		record(c -> c.internalError(translationTemplateId, copy, e));
+	}
+
+	@Override
+	public void internalError(final Throwable e) {
+		record(c -> c.internalError(e));
+	}
+
+	@Override
+	public String internalError(final String errorMessage, final byte[] bytes, final String mimeType) {
+		record(c -> c.internalError(errorMessage, bytes, mimeType));
+		return BUFFERED_ID;
+	}
+
+	@Override
+	public void info(final String message) {
+		record(c -> c.info(message));
+	}
+
+	@Override
+	public void error(final String message) {
+		record(c -> c.error(message));
+	}
+
+	@Override
+	public void debug(final String message) {
+		record(c -> c.debug(message));
+	}
+
+	@Override
+	public void registerTestTaskEndListener(final TestTaskEndListener listener) {
+		record(c -> c.registerTestTaskEndListener(listener));
+	}
+
+	@Override
+	public void release() {
+		// released by the runner
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.runner;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.eviware.soapui.model.project.Project;
+import com.eviware.soapui.model.testsuite.TestCaseRunner;
+import com.eviware.soapui.model.testsuite.TestRunContext;
+import com.eviware.soapui.model.testsuite.TestStepResult;
+import com.eviware.soapui.model.testsuite.TestStepResult.TestStepStatus;
+
+import de.interactive_instruments.etf.sel.Utils;
+
+/**
+ * Memorizes the outcomes of Test Cases which have been executed by Test Case
+ * Dependency steps, so that a target is executed at most once per scope and
+ * all other dependents reuse its status and timing.
+ *
+ * The scope is set with the system property
+ * {@code etf.sel.dependency.memo.scope}:
+ * <ul>
+ * <li>{@code run} (default): the outcomes are kept for the current project run
+ * or, if a single Test Case is run, for this Test Case run</li>
+ * <li>{@code project}: the outcomes are kept as long as the project is loaded</li>
+ * <li>{@code time}: like {@code project}, but the outcomes expire after the
+ * number of seconds set with {@code etf.sel.dependency.memo.ttl} (default 300)</li>
+ * </ul>
+ *
+ * Cancelled executions and executions which threw an exception are not memorized.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class DependencyOutcomeMemo {
+
+	/**
+	 * Run context property with the memo of the current run
+	 */
+	public static final String PROPERTY = "#DependencyOutcomeMemo#";
+
+	// Set by SoapUI for Test Cases which are run by a Run Test Case step
+	private static final String CALLING_CONTEXT_PROPERTY = "#CallingTestRunContext#";
+
+	private enum Scope {
+		RUN, PROJECT, TIME
+	}
+
+	private static final Scope SCOPE = parseScope(System.getProperty("etf.sel.dependency.memo.scope", "run"));
+	private static final long TIME_TO_LIVE = Long.getLong("etf.sel.dependency.memo.ttl", 300) * 1000;
+
+	// Memos of the project and time scope, removed when the project is garbage collected
+	private static final Map<Project, DependencyOutcomeMemo> projectMemos = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * The status and timing of an executed Test Case
+	 */
+	public static final class Outcome {
+		private final TestStepStatus status;
+		private final long timeTaken;
+		private final long timestamp;
+
+		private Outcome(final TestStepStatus status, final long timeTaken, final long timestamp) {
+			this.status = status;
+			this.timeTaken = timeTaken;
+			this.timestamp = timestamp;
+		}
+
+		public TestStepStatus getStatus() {
+			return status;
+		}
+
+		public long getTimeTaken() {
+			return timeTaken;
+		}
+
+		/**
+		 * @return the time the execution finished
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+	}
+
+	private static final class Entry {
+		private final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+		private final Thread owner = Thread.currentThread();
+
+		private boolean isExpired(final long timeToLive) {
+			if (timeToLive <= 0 || !outcome.isDone() || outcome.isCompletedExceptionally()) {
+				return false;
+			}
+			return System.currentTimeMillis() - outcome.join().timestamp > timeToLive;
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	// 0 if the outcomes do not expire
+	private final long timeToLive;
+
+	/**
+	 * Creates a memo for the run scope
+	 */
+	public DependencyOutcomeMemo() {
+		this(0);
+	}
+
+	private DependencyOutcomeMemo(final long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	private static Scope parseScope(final String scope) {
+		try {
+			return Scope.valueOf(scope.trim().toUpperCase());
+		} catch (final IllegalArgumentException e) {
+			Utils.log("Unknown dependency memo scope '" + scope + "', using the run scope");
+			return Scope.RUN;
+		}
+	}
+
+	/**
+	 * @return true if the memo is kept per run and has to be created by the runners
+	 */
+	public static boolean isRunScoped() {
+		return SCOPE == Scope.RUN;
+	}
+
+	/**
+	 * Returns the memo for the scope of a Test Case run
+	 *
+	 * @param testCaseRunner runner of the Test Case which contains the Test Case Dependency step
+	 * @return the memo, never null
+	 */
+	public static DependencyOutcomeMemo get(final TestCaseRunner testCaseRunner) {
+		if (SCOPE != Scope.RUN) {
+			final Project project = testCaseRunner.getTestCase().getTestSuite().getProject();
+			return projectMemos.computeIfAbsent(project,
+					p -> new DependencyOutcomeMemo(SCOPE == Scope.TIME ? TIME_TO_LIVE : 0));
+		}
+		// Use the memo of the run or of the outermost Test Case run
+		TestRunContext context = testCaseRunner.getRunContext();
+		while (true) {
+			final Object memo = context.getProperty(PROPERTY);
+			if (memo instanceof DependencyOutcomeMemo) {
+				return (DependencyOutcomeMemo) memo;
+			}
+			final Object callingContext = context.getProperty(CALLING_CONTEXT_PROPERTY);
+			if (!(callingContext instanceof TestRunContext)) {
+				final DependencyOutcomeMemo newMemo = new DependencyOutcomeMemo();
+				context.setProperty(PROPERTY, newMemo);
+				return newMemo;
+			}
+			context = (TestRunContext) callingContext;
+		}
+	}
+
+	/**
+	 * Executes a Test Case if it has not been executed in this scope, otherwise
+	 * waits until a concurrent execution has finished and reuses its outcome.
+	 *
+	 * @param testCaseId ID of the Test Case
+	 * @param execution executes the Test Case
+	 * @param reuse creates the result from a memorized outcome
+	 * @return the result of the execution or of the reused outcome
+	 * @throws InterruptedException if the thread has been interrupted while waiting for a concurrent execution
+	 */
+	public TestStepResult execute(final String testCaseId, final Supplier<TestStepResult> execution,
+			final Function<Outcome, TestStepResult> reuse) throws InterruptedException {
+		while (true) {
+			final Entry entry = new Entry();
+			final Entry existing = entries.putIfAbsent(testCaseId, entry);
+			if (existing == null) {
+				return executeAndMemorize(testCaseId, entry, execution);
+			}
+			if (existing.isExpired(timeToLive)) {
+				entries.remove(testCaseId, existing);
+				continue;
+			}
+			if (existing.owner == Thread.currentThread() && !existing.outcome.isDone()) {
+				// cyclic dependency, the Test Case is executed by this thread
+				return execution.get();
+			}
+			try {
+				return reuse.apply(existing.outcome.get());
+			} catch (final ExecutionException ign) {
+				// the execution failed or has been cancelled, try again
+			}
+		}
+	}
+
+	private TestStepResult executeAndMemorize(final String testCaseId, final Entry entry,
+			final Supplier<TestStepResult> execution) {
+		final TestStepResult result;
+		try {
+			result = execution.get();
+		} catch (final RuntimeException | Error e) {
+			entries.remove(testCaseId, entry);
+			entry.outcome.completeExceptionally(e);
+			throw e;
+		}
+		if (result == null || result.getStatus() == TestStepStatus.CANCELED) {
+			entries.remove(testCaseId, entry);
+			entry.outcome.completeExceptionally(new IllegalStateException("Execution cancelled"));
+		} else {
+			entry.outcome.complete(new Outcome(result.getStatus(), result.getTimeTaken(), System.currentTimeMillis()));
+		}
+		return result;
+	}
+}
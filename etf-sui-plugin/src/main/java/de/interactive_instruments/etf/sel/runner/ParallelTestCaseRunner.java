@@ -0,0 +1,397 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.runner;
+
+import static de.interactive_instruments.etf.dal.dto.result.TestResultStatus.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.eviware.soapui.impl.wsdl.WsdlProject;
+import com.eviware.soapui.impl.wsdl.WsdlTestSuite;
+import com.eviware.soapui.model.support.TestRunListenerAdapter;
+import com.eviware.soapui.model.testsuite.*;
+import com.eviware.soapui.support.types.StringToObjectMap;
+
+import de.interactive_instruments.etf.dal.dto.result.TestResultStatus;
+import de.interactive_instruments.etf.sel.Utils;
+import de.interactive_instruments.etf.sel.mapping.ProjectRunCollector;
+import de.interactive_instruments.etf.sel.mapping.TestRunCollector;
+import de.interactive_instruments.etf.sel.teststeps.TestCaseDependencyGraph;
+import de.interactive_instruments.etf.testdriver.TestResultCollector;
+
+/**
+ * Runs the Test Cases of a project in parallel, in the order of their dependencies.
+ *
+ * A Test Case is started on a bounded worker pool as soon as all Test Cases
+ * it depends on have finished. The number of workers can be set with the
+ * system property {@code etf.sel.runner.threads} and defaults to 4. If a Test
+ * Case fails, all Test Cases which directly or indirectly depend on it are
+ * not run and reported as skipped.
+ *
+ * The results of each Test Case are buffered and passed to the Test Result
+ * Collector on the calling thread, in the order of the project. The start and
+ * end of the project and the Test Suites are reported through a
+ * ProjectRunCollector, the Test Cases through a TestRunCollector, as in a
+ * sequential run. No other TestRunCollector must be registered for the Test
+ * Cases of the project.
+ *
+ * The setup and tear down scripts of the project and the Test Suites would
+ * have to run around the Test Cases of all Test Suites at once, so projects
+ * which have them are refused, see {@link #getUnsupportedReason(WsdlProject)}.
+ * {@link ProjectRunLauncher} runs these projects sequentially.
+ *
+ * If the run is interrupted or fails, the running Test Cases are cancelled,
+ * the finished Test Cases are reported and the project is ended with an
+ * internal error.
+ *
+ * Test Case Dependency steps find the results of their targets in the
+ * {@link TestCaseRunRegistry} of the run and do not run them again.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public class ParallelTestCaseRunner {
+
+	private static final int DEFAULT_THREADS = Integer.getInteger("etf.sel.runner.threads", 4);
+
+	private final WsdlProject project;
+	private final TestResultCollector collector;
+	private final ProjectRunCollector projectRunCollector;
+	private final int threads;
+
+	private static final class Outcome {
+		private final int index;
+		private final TestRunner.Status status;
+		private final BufferedTestResultCollector buffer;
+
+		private Outcome(final int index, final TestRunner.Status status, final BufferedTestResultCollector buffer) {
+			this.index = index;
+			this.status = status;
+			this.buffer = buffer;
+		}
+
+		private boolean isFailed() {
+			return status != TestRunner.Status.FINISHED && status != TestRunner.Status.WARNING;
+		}
+	}
+
+	/**
+	 * Tracks the runners of the Test Cases which are currently run, so they can be
+	 * cancelled if the run is aborted. A Test Case which is started after the run
+	 * has been aborted is cancelled immediately.
+	 */
+	private static final class RunningTestCases extends TestRunListenerAdapter {
+		private final Set<TestCaseRunner> runners = ConcurrentHashMap.newKeySet();
+		private volatile String cancelReason;
+
+		@Override
+		public void beforeRun(final TestCaseRunner testCaseRunner, final TestCaseRunContext runContext) {
+			runners.add(testCaseRunner);
+			final String reason = cancelReason;
+			if (reason != null) {
+				testCaseRunner.cancel(reason);
+			}
+		}
+
+		@Override
+		public void afterRun(final TestCaseRunner testCaseRunner, final TestCaseRunContext runContext) {
+			runners.remove(testCaseRunner);
+		}
+
+		private void cancel(final String reason) {
+			cancelReason = reason;
+			for (final TestCaseRunner testCaseRunner : runners) {
+				testCaseRunner.cancel(reason);
+			}
+		}
+	}
+
+	public ParallelTestCaseRunner(final WsdlProject project, final TestResultCollector collector) {
+		this(project, collector, DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param project SoapUI project
+	 * @param collector collector for the results
+	 * @param threads maximum number of Test Cases which are run at the same time
+	 */
+	public ParallelTestCaseRunner(final WsdlProject project, final TestResultCollector collector, final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required");
+		}
+		this.project = project;
+		this.collector = collector;
+		this.projectRunCollector = new ProjectRunCollector(collector);
+		this.threads = threads;
+	}
+
+	/**
+	 * Checks if the Test Cases of a project can be run in parallel
+	 *
+	 * @param project SoapUI project
+	 * @return null if the project can be run, otherwise the reason why it can not be run
+	 */
+	public static String getUnsupportedReason(final WsdlProject project) {
+		final String scriptReason = getScriptReason(project);
+		if (scriptReason != null) {
+			return scriptReason;
+		}
+		final TestCaseDependencyGraph graph = TestCaseDependencyGraph.build(getEnabledTestCases(project));
+		return graph.hasCycles() ? getCycleReason(graph) : null;
+	}
+
+	private static String getScriptReason(final WsdlProject project) {
+		if (hasScript(project.getBeforeRunScript()) || hasScript(project.getAfterRunScript())) {
+			return "Project " + project.getName() + " has a setup or tear down script";
+		}
+		for (int tsi = 0; tsi < project.getTestSuiteCount(); tsi++) {
+			final TestSuite testSuite = project.getTestSuiteAt(tsi);
+			if (!testSuite.isDisabled() && testSuite instanceof WsdlTestSuite
+					&& (hasScript(((WsdlTestSuite) testSuite).getSetupScript())
+							|| hasScript(((WsdlTestSuite) testSuite).getTearDownScript()))) {
+				return "Test Suite " + testSuite.getName() + " has a setup or tear down script";
+			}
+		}
+		return null;
+	}
+
+	private static boolean hasScript(final String script) {
+		return script != null && !script.trim().isEmpty();
+	}
+
+	private static String getCycleReason(final TestCaseDependencyGraph graph) {
+		return "Test Cases with cyclic dependencies can not be run in parallel: " + graph.describeCycles();
+	}
+
+	private static List<TestCase> getEnabledTestCases(final WsdlProject project) {
+		final List<TestCase> testCases = new ArrayList<>();
+		for (int tsi = 0; tsi < project.getTestSuiteCount(); tsi++) {
+			final TestSuite testSuite = project.getTestSuiteAt(tsi);
+			if (!testSuite.isDisabled()) {
+				for (int tci = 0; tci < testSuite.getTestCaseCount(); tci++) {
+					final TestCase testCase = testSuite.getTestCaseAt(tci);
+					if (!testCase.isDisabled()) {
+						testCases.add(testCase);
+					}
+				}
+			}
+		}
+		return testCases;
+	}
+
+	/**
+	 * Runs all enabled Test Cases of all enabled Test Suites
+	 *
+	 * @return the status of each Test Case, keyed by the Test Case ID in project order.
+	 * Skipped Test Cases have the status CANCELED.
+	 * @throws IllegalStateException if the project or a Test Suite has a setup or tear down script
+	 * or the Test Cases have cyclic dependencies
+	 * @throws InterruptedException if the calling thread has been interrupted, running Test Cases are cancelled
+	 */
+	public Map<String, TestRunner.Status> run() throws InterruptedException {
+		final String scriptReason = getScriptReason(project);
+		if (scriptReason != null) {
+			throw new IllegalStateException(scriptReason + ", the project can not be run in parallel");
+		}
+		final List<TestCase> testCases = getEnabledTestCases(project);
+		final TestCaseDependencyGraph graph = TestCaseDependencyGraph.build(testCases);
+		if (graph.hasCycles()) {
+			throw new IllegalStateException(getCycleReason(graph));
+		}
+
+		final int size = testCases.size();
+		final Map<TestCase, Integer> indices = new IdentityHashMap<>(size);
+		final int[] remainingDependencies = new int[size];
+		for (int i = 0; i < size; i++) {
+			indices.put(testCases.get(i), i);
+			remainingDependencies[i] = graph.getDependencies(testCases.get(i)).size();
+		}
+		// written by the workers, read by the Test Case Dependency steps and the buffers
+		final TestCaseRunRegistry registry = new TestCaseRunRegistry();
+		final DependencyOutcomeMemo memo = DependencyOutcomeMemo.isRunScoped() ? new DependencyOutcomeMemo() : null;
+		final Map<String, TestResultStatus> statuses = new ConcurrentHashMap<>();
+		// null if the Test Case has not finished yet, without buffer if it has been skipped
+		final Outcome[] outcomes = new Outcome[size];
+
+		final AtomicInteger threadCounter = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, size)), r -> {
+			final Thread thread = new Thread(r, "etf-sel-runner-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		final CompletionService<Outcome> completionService = new ExecutorCompletionService<>(executor);
+		// Test Cases which are currently run by the workers
+		final RunningTestCases running = new RunningTestCases();
+		final long start = System.currentTimeMillis();
+		int pending = size;
+		int replayed = 0;
+		TestSuite currentTestSuite = null;
+		boolean started = false;
+		Exception failure = null;
+		try {
+			projectRunCollector.beforeRun(project);
+			started = true;
+			for (int i = 0; i < size; i++) {
+				if (remainingDependencies[i] == 0) {
+					submit(completionService, i, testCases.get(i), registry, memo, statuses, running);
+				}
+			}
+			while (pending > 0) {
+				final Outcome outcome = take(completionService);
+				outcomes[outcome.index] = outcome;
+				pending--;
+				final TestCase finished = testCases.get(outcome.index);
+				if (outcome.isFailed()) {
+					for (final TestCase dependent : graph.getTransitiveDependents(finished)) {
+						final int dependentIndex = indices.get(dependent);
+						if (outcomes[dependentIndex] == null) {
+							outcomes[dependentIndex] = new Outcome(dependentIndex, TestRunner.Status.CANCELED, null);
+							statuses.put(dependent.getId(), SKIPPED);
+							pending--;
+						}
+					}
+				} else {
+					for (final TestCase dependent : graph.getDependents(finished)) {
+						final int dependentIndex = indices.get(dependent);
+						if (--remainingDependencies[dependentIndex] == 0 && outcomes[dependentIndex] == null) {
+							submit(completionService, dependentIndex, dependent, registry, memo, statuses, running);
+						}
+					}
+				}
+				// Pass the results to the collector in project order. The index is advanced
+				// first, so a Test Case is not replayed again if its replay fails.
+				while (replayed < size && outcomes[replayed] != null) {
+					final int index = replayed++;
+					currentTestSuite = replay(testCases.get(index), outcomes[index], currentTestSuite);
+				}
+			}
+		} catch (final InterruptedException | RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			executor.shutdownNow();
+			if (failure != null) {
+				// the workers can not be interrupted while a Test Case is running
+				running.cancel("Run of project " + project.getName() + " aborted: " + failure);
+			}
+			if (started) {
+				end(testCases, outcomes, replayed, currentTestSuite, failure);
+			}
+		}
+		Utils.log("Ran " + size + " Test Cases of project " + project.getName() + " with " + threads
+				+ " threads in " + (System.currentTimeMillis() - start) + " ms");
+
+		final Map<String, TestRunner.Status> result = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			result.put(testCases.get(i).getId(), outcomes[i].status);
+		}
+		return result;
+	}
+
+	private void submit(final CompletionService<Outcome> completionService, final int index,
+			final TestCase testCase, final TestCaseRunRegistry registry, final DependencyOutcomeMemo memo,
+			final Map<String, TestResultStatus> statuses, final RunningTestCases running) {
+		completionService.submit(() -> runTestCase(index, testCase, registry, memo, statuses, running));
+	}
+
+	/**
+	 * Ends the open Test Suite and the project. If the run failed, the Test Cases
+	 * which have finished but not yet been reported are passed to the collector
+	 * first and the failure is reported as internal error.
+	 */
+	private void end(final List<TestCase> testCases, final Outcome[] outcomes, final int replayed,
+			final TestSuite currentTestSuite, final Exception failure) {
+		if (failure == null) {
+			if (currentTestSuite != null) {
+				projectRunCollector.afterTestSuite(currentTestSuite);
+			}
+			projectRunCollector.afterRun(project);
+			return;
+		}
+		TestSuite testSuite = currentTestSuite;
+		try {
+			for (int i = replayed; i < outcomes.length; i++) {
+				if (outcomes[i] != null) {
+					testSuite = replay(testCases.get(i), outcomes[i], testSuite);
+				}
+			}
+		} catch (final RuntimeException e) {
+			Utils.logError(e, "Failed to report finished Test Cases of project " + project.getName());
+		}
+		projectRunCollector.abortRun(project, testSuite, failure);
+	}
+
+	private static Outcome take(final CompletionService<Outcome> completionService) throws InterruptedException {
+		try {
+			return completionService.take().get();
+		} catch (final ExecutionException e) {
+			// runTestCase catches all exceptions
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private Outcome runTestCase(final int index, final TestCase testCase, final TestCaseRunRegistry registry,
+			final DependencyOutcomeMemo memo, final Map<String, TestResultStatus> statuses,
+			final RunningTestCases running) {
+		final BufferedTestResultCollector buffer = new BufferedTestResultCollector(collector, statuses::get);
+		final TestRunCollector testRunCollector = new TestRunCollector(buffer);
+		testCase.addTestRunListener(running);
+		testCase.addTestRunListener(testRunCollector);
+		TestRunner.Status status;
+		try {
+			final StringToObjectMap properties = new StringToObjectMap();
+			properties.put(TestCaseRunRegistry.PROPERTY, registry);
+			if (memo != null) {
+				properties.put(DependencyOutcomeMemo.PROPERTY, memo);
+			}
+			final TestCaseRunner testCaseRunner = testCase.run(properties, false);
+			status = testCaseRunner.getStatus();
+			// already registered by the TestRunCollector
+			registry.finished(testCaseRunner);
+		} catch (final RuntimeException e) {
+			buffer.internalError(e);
+			status = TestRunner.Status.FAILED;
+		} finally {
+			testCase.removeTestRunListener(testRunCollector);
+			testCase.removeTestRunListener(running);
+		}
+		statuses.put(testCase.getId(),
+				status == TestRunner.Status.FINISHED || status == TestRunner.Status.WARNING ? PASSED : FAILED);
+		return new Outcome(index, status, buffer);
+	}
+
+	/**
+	 * @return the Test Suite which is open after the Test Case has been reported
+	 */
+	private TestSuite replay(final TestCase testCase, final Outcome outcome, final TestSuite currentTestSuite) {
+		final TestSuite testSuite = testCase.getTestSuite();
+		if (testSuite != currentTestSuite) {
+			if (currentTestSuite != null) {
+				projectRunCollector.afterTestSuite(currentTestSuite);
+			}
+			projectRunCollector.beforeTestSuite(testSuite);
+		}
+		if (outcome.buffer != null) {
+			outcome.buffer.replay(collector);
+		} else {
+			collector.startTestCase(testCase.getId());
+			collector.info("Test Case '" + testCase.getName() + "' skipped, a Test Case it depends on failed");
+			collector.end(testCase.getId(), SKIPPED.value());
+		}
+		return testSuite;
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.eviware.soapui.impl.wsdl.WsdlProject;
+import com.eviware.soapui.model.testsuite.TestCase;
+import com.eviware.soapui.model.testsuite.TestRunner;
+import com.eviware.soapui.model.testsuite.TestSuite;
+import com.eviware.soapui.support.types.StringToObjectMap;
+
+import de.interactive_instruments.etf.sel.Utils;
+import de.interactive_instruments.etf.sel.mapping.ProjectRunCollector;
+import de.interactive_instruments.etf.sel.mapping.TestRunCollector;
+import de.interactive_instruments.etf.testdriver.TestResultCollector;
+
+/**
+ * Starts the run of a project and reports the results to a Test Result Collector.
+ *
+ * The project is run sequentially by SoapUI, with a ProjectRunCollector and a
+ * TestRunCollector. The Test Cases are run in parallel by the
+ * {@link ParallelTestCaseRunner} if the project property or the system property
+ * {@code etf.sel.runner.parallel} is set to true, the project property takes
+ * precedence. Projects which can not be run in parallel, for instance because
+ * a Test Suite has a setup script, are run sequentially.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class ProjectRunLauncher {
+
+	/**
+	 * Name of the project property and the system property which enables parallel runs
+	 */
+	public static final String PARALLEL_PROPERTY = "etf.sel.runner.parallel";
+
+	private ProjectRunLauncher() {
+
+	}
+
+	/**
+	 * @param project SoapUI project
+	 * @return true if the Test Cases of the project shall be run in parallel
+	 */
+	public static boolean isParallel(final WsdlProject project) {
+		if (project.hasProperty(PARALLEL_PROPERTY)) {
+			return Boolean.parseBoolean(project.getPropertyValue(PARALLEL_PROPERTY));
+		}
+		return Boolean.getBoolean(PARALLEL_PROPERTY);
+	}
+
+	/**
+	 * Runs all enabled Test Cases of the project
+	 *
+	 * @param project SoapUI project
+	 * @param collector collector for the results
+	 * @return status of the project run
+	 * @throws InterruptedException if the calling thread has been interrupted during a parallel run
+	 */
+	public static TestRunner.Status run(final WsdlProject project, final TestResultCollector collector)
+			throws InterruptedException {
+		if (isParallel(project)) {
+			final String unsupportedReason = ParallelTestCaseRunner.getUnsupportedReason(project);
+			if (unsupportedReason == null) {
+				return runParallel(project, collector);
+			}
+			Utils.log("Running project " + project.getName() + " sequentially: " + unsupportedReason);
+		}
+		return runSequential(project, collector);
+	}
+
+	private static TestRunner.Status runParallel(final WsdlProject project, final TestResultCollector collector)
+			throws InterruptedException {
+		for (final TestRunner.Status status : new ParallelTestCaseRunner(project, collector).run().values()) {
+			if (status != TestRunner.Status.FINISHED && status != TestRunner.Status.WARNING) {
+				return TestRunner.Status.FAILED;
+			}
+		}
+		return TestRunner.Status.FINISHED;
+	}
+
+	private static TestRunner.Status runSequential(final WsdlProject project, final TestResultCollector collector) {
+		final ProjectRunCollector projectRunCollector = new ProjectRunCollector(collector);
+		final TestRunCollector testRunCollector = new TestRunCollector(collector);
+		final List<TestCase> testCases = new ArrayList<>();
+		for (int tsi = 0; tsi < project.getTestSuiteCount(); tsi++) {
+			final TestSuite testSuite = project.getTestSuiteAt(tsi);
+			for (int tci = 0; tci < testSuite.getTestCaseCount(); tci++) {
+				testCases.add(testSuite.getTestCaseAt(tci));
+			}
+		}
+		project.addProjectRunListener(projectRunCollector);
+		for (final TestCase testCase : testCases) {
+			testCase.addTestRunListener(testRunCollector);
+		}
+		try {
+			return project.run(new StringToObjectMap(), false).getStatus();
+		} finally {
+			for (final TestCase testCase : testCases) {
+				testCase.removeTestRunListener(testRunCollector);
+			}
+			project.removeProjectRunListener(projectRunCollector);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.runner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.eviware.soapui.model.testsuite.TestCaseRunner;
+import com.eviware.soapui.model.testsuite.TestRunContext;
+
+/**
+ * The Test Cases which have been started in a run, keyed by their ID.
+ *
+ * The registry is created by the ProjectRunCollector or the
+ * ParallelTestCaseRunner, stored in the run context property {@link #PROPERTY}
+ * and populated by the TestRunCollector. Test Case Dependency steps look up
+ * their targets here and wait for the completion of a running target, instead
+ * of scanning all results of the project runner.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public final class TestCaseRunRegistry {
+
+	/**
+	 * Run context property with the registry of the current run
+	 */
+	public static final String PROPERTY = "#TestCaseRunRegistry#";
+
+	private final ConcurrentMap<String, CompletableFuture<TestCaseRunner>> testCaseRuns = new ConcurrentHashMap<>();
+
+	/**
+	 * @param context run context of a project, a Test Suite or a Test Case
+	 * @return the registry of the run or null if the run has no registry
+	 */
+	public static TestCaseRunRegistry get(final TestRunContext context) {
+		final Object registry = context != null ? context.getProperty(PROPERTY) : null;
+		return registry instanceof TestCaseRunRegistry ? (TestCaseRunRegistry) registry : null;
+	}
+
+	/**
+	 * Registers a Test Case which has been started
+	 *
+	 * @param testCaseRunner runner of the Test Case
+	 */
+	public void started(final TestCaseRunner testCaseRunner) {
+		testCaseRuns.putIfAbsent(testCaseRunner.getTestCase().getId(), new CompletableFuture<>());
+	}
+
+	/**
+	 * Registers a Test Case which has finished and notifies the waiting
+	 * Test Case Dependency steps. If a Test Case is run more than once, the
+	 * first run is kept.
+	 *
+	 * @param testCaseRunner runner of the finished Test Case
+	 */
+	public void finished(final TestCaseRunner testCaseRunner) {
+		testCaseRuns.computeIfAbsent(testCaseRunner.getTestCase().getId(), id -> new CompletableFuture<>())
+				.complete(testCaseRunner);
+	}
+
+	/**
+	 * @param testCaseId ID of the Test Case
+	 * @return a future which completes with the runner of the Test Case when
+	 * it has finished, or null if the Test Case has not been started in this run
+	 */
+	public CompletableFuture<TestCaseRunner> get(final String testCaseId) {
+		return testCaseRuns.get(testCaseId);
+	}
+
+}
@@ -16,6 +16,8 @@
 package de.interactive_instruments.etf.sel.teststeps;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import com.eviware.soapui.config.TestStepConfig;
 import com.eviware.soapui.impl.wsdl.testcase.WsdlTestCase;
@@ -25,6 +27,8 @@ import com.eviware.soapui.model.testsuite.*;
 import com.eviware.soapui.model.testsuite.TestStepResult.TestStepStatus;
 import com.eviware.soapui.plugins.auto.PluginTestStep;
 
+import de.interactive_instruments.etf.sel.runner.DependencyOutcomeMemo;
+import de.interactive_instruments.etf.sel.runner.TestCaseRunRegistry;
 import de.interactive_instruments.exceptions.ExcUtils;
 
 /**
@@ -38,6 +42,23 @@ public class TestCaseDependencyStep extends WsdlRunTestCaseTestStep implements T
 	}
 
 	public TestStepResult run(TestCaseRunner testRunner, TestCaseRunContext testRunContext) {
+		final TestCaseRunRegistry registry = TestCaseRunRegistry.get(testRunner.getRunContext());
+		if (registry != null) {
+			// Check if Test Case has already been started in this run
+			final CompletableFuture<TestCaseRunner> targetRun = registry.get(getTargetTestCase().getId());
+			if (targetRun != null) {
+				try {
+					return toResult(targetRun.get());
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return toResult(TestStepStatus.CANCELED, 0);
+				} catch (final ExecutionException ign) {
+					ExcUtils.suppress(ign);
+				}
+			}
+			return runOnce(testRunner, testRunContext);
+		}
+		// Fallback for runs without a Test Case Run Registry
 		final Object o = testRunner.getRunContext().getProperty("#ProjectRunner#");
 		if (o != null) {
 			try {
@@ -52,11 +73,7 @@ public class TestCaseDependencyStep extends WsdlRunTestCaseTestStep implements T
 								if (caseRunner.getStatus() == TestRunner.Status.RUNNING) {
 									caseRunner.waitUntilFinished();
 								}
-								final WsdlMessageExchangeTestStepResult result = new WsdlMessageExchangeTestStepResult(this);
-								result.setTimeStamp(System.currentTimeMillis());
-								result.setTimeTaken(caseRunner.getTimeTaken());
-								result.setStatus(runnerStatusToTestStepStatus(caseRunner));
-								return result;
+								return toResult(caseRunner);
 							}
 						}
 					}
@@ -65,7 +82,34 @@ public class TestCaseDependencyStep extends WsdlRunTestCaseTestStep implements T
 				ExcUtils.suppress(ign);
 			}
 		}
-		return super.run(testRunner, testRunContext);
+		return runOnce(testRunner, testRunContext);
+	}
+
+	/**
+	 * Runs the target Test Case or reuses its outcome, if it has already been
+	 * run by another Test Case Dependency step in the scope of the memo
+	 */
+	private TestStepResult runOnce(final TestCaseRunner testRunner, final TestCaseRunContext testRunContext) {
+		try {
+			return DependencyOutcomeMemo.get(testRunner).execute(getTargetTestCase().getId(),
+					() -> super.run(testRunner, testRunContext),
+					outcome -> toResult(outcome.getStatus(), outcome.getTimeTaken()));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return toResult(TestStepStatus.CANCELED, 0);
+		}
+	}
+
+	private TestStepResult toResult(final TestCaseRunner caseRunner) {
+		return toResult(runnerStatusToTestStepStatus(caseRunner), caseRunner.getTimeTaken());
+	}
+
+	private TestStepResult toResult(final TestStepStatus status, final long timeTaken) {
+		final WsdlMessageExchangeTestStepResult result = new WsdlMessageExchangeTestStepResult(this);
+		result.setTimeStamp(System.currentTimeMillis());
+		result.setTimeTaken(timeTaken);
+		result.setStatus(status);
+		return result;
 	}
 
 	private TestStepStatus runnerStatusToTestStepStatus(final TestCaseRunner testCaseRunner) {
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010-2019 interactive instruments GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.interactive_instruments.etf.sel.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * The expected token arguments are the results of the former recursive parser (parseRec in
+ * TestRunCollector), except for the PASS and FAIL tokens, which the former parser did not skip
+ * but stopped at.
+ *
+ * @author Jon Herrmann ( herrmann aT interactive-instruments doT de )
+ */
+public class EtfTranslateMessageTest {
+
+	private static final String EMPTY = "[ empty value (invalid response?) ]";
+
+	private static Map<String, String> args(final String... tokenArguments) {
+		final Map<String, String> map = new LinkedHashMap<>();
+		for (int i = 0; i < tokenArguments.length; i += 2) {
+			map.put(tokenArguments[i], tokenArguments[i + 1]);
+		}
+		return map;
+	}
+
+	private static Map<String, String> parseTokenArguments(final String message) {
+		final int parseIndex = message.indexOf('>', message.indexOf("<etfTranslate ")) + 1;
+		final Map<String, String> tokenArguments = new TreeMap<>();
+		EtfTranslateMessage.parseTokenArguments(message, parseIndex, message.lastIndexOf("</etfTranslate>"),
+				tokenArguments);
+		return tokenArguments;
+	}
+
+	@Test
+	public void testNoEnvelope() {
+		assertNull(EtfTranslateMessage.parse("Assertion failed"));
+		assertNull(EtfTranslateMessage.parse("<etfTranslate><A>a</A></etfTranslate>"));
+		assertNull(EtfTranslateMessage.parse("<etfTranslate what='x></etfTranslate>"));
+	}
+
+	@Test
+	public void testSingleQuotedWhat() {
+		final EtfTranslateMessage message = EtfTranslateMessage.parse(
+				"<etfTranslate what='wfs.invalid'><A>a</A></etfTranslate>");
+		assertEquals("TR.wfs.invalid", message.getTranslationTemplateId());
+		assertEquals(args("A", "a"), message.getTokenArguments());
+		assertFalse(message.isManual());
+	}
+
+	@Test
+	public void testDoubleQuotedWhat() {
+		final EtfTranslateMessage message = EtfTranslateMessage.parse(
+				"Prefix <etfTranslate what=\"TR.manual.check\"><A>a</A><B>bbbbbbbbbbbbbb</B></etfTranslate>");
+		assertEquals("TR.manual.check", message.getTranslationTemplateId());
+		assertEquals(args("A", "a", "B", "bbbbbbbbbbbbbb"), message.getTokenArguments());
+		assertTrue(message.isManual());
+	}
+
+	@Test
+	public void testRepeatedTokens() {
+		final String message = "<etfTranslate what='x'><A>1</A><B>b</B><A>2</A><A>1</A><A>3</A>"
+				+ "<C>cccccccccccccc</C></etfTranslate>";
+		// an argument is only dropped if it equals the complete list, not one of its items
+		final Map<String, String> expected = args("A", "3, 1, 2, 1", "B", "b", "C", "cccccccccccccc");
+		assertEquals(expected, EtfTranslateMessage.parse(message).getTokenArguments());
+		assertEquals(expected, parseTokenArguments(message));
+	}
+
+	@Test
+	public void testEmptyArguments() {
+		assertEquals(args("A", EMPTY, "B", "b"),
+				parseTokenArguments("<etfTranslate what='x'><A></A><B>b</B><A></A></etfTranslate>"));
+		// a later non-empty argument is prepended to the placeholder
+		assertEquals(args("A", "aaaaaaaaaaaaaa, " + EMPTY),
+				parseTokenArguments("<etfTranslate what='x'><A></A><A>aaaaaaaaaaaaaa</A></etfTranslate>"));
+		// an empty argument is not appended to an existing one
+		assertEquals(args("A", "a"),
+				parseTokenArguments("<etfTranslate what='x'><A>a</A><A></A></etfTranslate>"));
+	}
+
+	@Test
+	public void testPassAndFailTokensAreIgnored() {
+		assertEquals(args("A", "a", "B", "bbbbbbbbbbbbbb"), parseTokenArguments(
+				"<etfTranslate what='x'><PASS>p</PASS><A>a</A><FAIL>f</FAIL><B>bbbbbbbbbbbbbb</B></etfTranslate>"));
+		assertEquals(args("PASSED", "p"), parseTokenArguments(
+				"<etfTranslate what='x'><PASSED>p</PASSED></etfTranslate>"));
+	}
+
+	@Test
+	public void testSelfClosingTagEndsParsing() {
+		assertEquals(Collections.emptyMap(),
+				parseTokenArguments("<etfTranslate what='x'><A/><B>b</B></etfTranslate>"));
+		assertEquals(args("A", "a"),
+				parseTokenArguments("<etfTranslate what='x'><A>a</A><B/><C>c</C></etfTranslate>"));
+	}
+
+	@Test
+	public void testTokenWithAttributes() {
+		assertEquals(args("A", "a", "B", "bbbbbbbbbbbbbb"),
+				parseTokenArguments("<etfTranslate what='x'><A type='1'>a</A><B>bbbbbbbbbbbbbb</B></etfTranslate>"));
+	}
+
+	@Test
+	public void testMissingTokenEndTag() {
+		assertEquals(Collections.emptyMap(),
+				parseTokenArguments("<etfTranslate what='x'><A>a<B>b</B></etfTranslate>"));
+		assertEquals(args("A", "a"),
+				parseTokenArguments("<etfTranslate what='x'><A>a</A><B>b</etfTranslate>"));
+	}
+
+	@Test
+	public void testMissingEnvelopeEndTag() {
+		final EtfTranslateMessage message = EtfTranslateMessage.parse("<etfTranslate what='x'><A>a</A>");
+		assertEquals("TR.x", message.getTranslationTemplateId());
+		assertTrue(message.getTokenArguments().isEmpty());
+	}
+
+	@Test
+	public void testShortLastToken() {
+		// the former parser stops if less than 15 characters remain in front of the end tag
+		assertEquals(args("A", "a"),
+				parseTokenArguments("<etfTranslate what='x'><A>a</A><B>b</B></etfTranslate>"));
+		assertEquals(args("A", "a", "B", "bbbbbbbbbbbbbb"),
+				parseTokenArguments("<etfTranslate what='x'><A>a</A><B>bbbbbbbbbbbbbb</B></etfTranslate>"));
+	}
+}